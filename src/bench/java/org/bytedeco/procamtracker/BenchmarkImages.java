@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bytedeco.procamtracker;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Helpers shared by the benchmarks to create images of a given resolution
+ * filled with reproducible random content.
+ *
+ * @author Samuel Audet
+ */
+class BenchmarkImages {
+    private BenchmarkImages() { }
+
+    static int[] parseResolution(String resolution) {
+        String[] s = resolution.split("x");
+        return new int[] { Integer.parseInt(s[0]), Integer.parseInt(s[1]) };
+    }
+
+    static IplImage createRandom(int width, int height, int depth, int channels, long seed) {
+        IplImage image = IplImage.create(width, height, depth, channels);
+        Random random = new Random(seed);
+        if (depth == IPL_DEPTH_32F) {
+            FloatBuffer buf = image.getFloatBuffer();
+            while (buf.hasRemaining()) {
+                buf.put(random.nextFloat());
+            }
+        } else {
+            ByteBuffer buf = image.getByteBuffer();
+            byte[] row = new byte[image.widthStep()];
+            while (buf.hasRemaining()) {
+                random.nextBytes(row);
+                buf.put(row, 0, Math.min(row.length, buf.remaining()));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bytedeco.procamtracker;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Measures the rendering of the {@link Chronometer} over a frame, with the
+ * default bounds of {@link RealityAugmentor.VirtualSettings}.
+ *
+ * @author Samuel Audet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ChronometerBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    String resolution;
+
+    IplImage image;
+    Chronometer chronometer;
+
+    @Setup public void setup() {
+        int[] size = BenchmarkImages.parseResolution(resolution);
+        image = BenchmarkImages.createRandom(size[0], size[1], IPL_DEPTH_8U, 3, 1);
+        chronometer = new Chronometer(new Rectangle(0, -50, 150, 50), image);
+    }
+
+    @TearDown public void tearDown() {
+        image.release();
+    }
+
+    @Benchmark public IplImage draw() {
+        chronometer.draw(image);
+        return image;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bytedeco.procamtracker;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bytedeco.javacv.JavaCV;
+import org.bytedeco.javacv.ProjectiveTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Measures the per-frame work of {@link RealityAugmentor}: the alpha blending of
+ * an image over a video frame, the copy of a desktop screen capture, and the
+ * warping of the frame into the projector image, as done by update() for
+ * tracked projections.
+ *
+ * @author Samuel Audet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RealityAugmentorBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    String resolution;
+
+    IplImage overlayImage, frameImage, projectorImage;
+    int[] screenCapture;
+    int screenCaptureStep;
+    ProjectiveTransformer warper;
+    ProjectiveTransformer.Parameters warperParameters;
+    CvRect roi;
+
+    @Setup public void setup() {
+        int[] size = BenchmarkImages.parseResolution(resolution);
+        int w = size[0], h = size[1];
+        overlayImage   = BenchmarkImages.createRandom(w, h, IPL_DEPTH_8U, 4, 1);
+        frameImage     = BenchmarkImages.createRandom(w, h, IPL_DEPTH_8U, 3, 2);
+        projectorImage = IplImage.create(w, h, IPL_DEPTH_8U, 3);
+
+        Random random = new Random(3);
+        screenCaptureStep = w;
+        screenCapture = new int[w*h];
+        for (int i = 0; i < screenCapture.length; i++) {
+            screenCapture[i] = random.nextInt();
+        }
+
+        // a mild perspective distortion, similar to a plane seen by the projector
+        double[] framePts = { 0.0, 0.0,  w, 0.0,  w, h,  0.0, h };
+        double[] dstPts = { 0.10*w, 0.05*h,  0.85*w, 0.10*h,  0.90*w, 0.95*h,  0.05*w, 0.90*h };
+        CvMat H = CvMat.create(3, 3);
+        JavaCV.getPerspectiveTransform(framePts, dstPts, H);
+        warper = new ProjectiveTransformer();
+        warper.setFillColor(CvScalar.WHITE);
+        warperParameters = warper.createParameters();
+        warperParameters.set(H, false);
+        H.release();
+
+        roi = cvRect(0, 0, w, h);
+        JavaCV.boundingRect(dstPts, roi, 3, 3, 16, 1);
+    }
+
+    @TearDown public void tearDown() {
+        overlayImage.release();
+        frameImage.release();
+        projectorImage.release();
+    }
+
+    @Benchmark public IplImage alphaBlend() {
+        RealityAugmentor.alphaBlend(overlayImage, frameImage);
+        return frameImage;
+    }
+
+    @Benchmark public IplImage copyScreenCapture() {
+        RealityAugmentor.copyScreenCapture(screenCapture, screenCaptureStep, frameImage);
+        return frameImage;
+    }
+
+    @Benchmark public IplImage warpFrame() {
+        warper.transform(frameImage, projectorImage, roi, 0, warperParameters, false);
+        return projectorImage;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bytedeco.procamtracker;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Measures the conversion of the float images of the aligner into the 8-bit
+ * images displayed in the monitor windows, as done for every pyramid level,
+ * against the original loop, which converted one pixel at a time with relative
+ * buffer accesses on the calling thread only.
+ *
+ * @author Samuel Audet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TrackingEngineBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    String resolution;
+
+    IplImage floatImage, maskImage, monitorImage;
+
+    @Setup public void setup() {
+        int[] size = BenchmarkImages.parseResolution(resolution);
+        floatImage   = BenchmarkImages.createRandom(size[0], size[1], IPL_DEPTH_32F, 3, 1);
+        maskImage    = BenchmarkImages.createRandom(size[0], size[1], IPL_DEPTH_8U,  1, 2);
+        monitorImage = IplImage.create(size[0], size[1], IPL_DEPTH_8U, 3);
+    }
+
+    @TearDown public void tearDown() {
+        floatImage.release();
+        maskImage.release();
+        monitorImage.release();
+    }
+
+    @Benchmark public IplImage getMonitorImage() {
+        TrackingEngine.convertMonitorImage(floatImage, maskImage, monitorImage);
+        return monitorImage;
+    }
+
+    @Benchmark public IplImage getMonitorImageSerial() {
+        convertMonitorImageSerial(floatImage, maskImage, monitorImage);
+        return monitorImage;
+    }
+
+    /** The original implementation of TrackingEngine.convertMonitorImage(), as a baseline. */
+    static void convertMonitorImageSerial(IplImage floatImage, IplImage maskImage, IplImage monitorImage) {
+        final int inChannels = floatImage.nChannels();
+        final int outChannels = monitorImage.nChannels();
+        final int[] order = inChannels == 3 ? new int[] { 0, 1, 2 } : new int[] { 2, 1, 0 };
+
+        FloatBuffer in  = floatImage.getFloatBuffer();
+        ByteBuffer mask = maskImage == null ? null : maskImage.getByteBuffer();
+        ByteBuffer out  = monitorImage.getByteBuffer();
+        float[] buffer = new float[4];
+        while (in.hasRemaining() && out.hasRemaining() && (mask == null || mask.hasRemaining())) {
+            byte m = mask == null ? (byte)0xFF : mask.get();
+            for (int z = 0; z < inChannels; z++) {
+                buffer[z] = Math.max(0, Math.min(1, Math.abs(in.get())));
+            }
+            for (int z = 0; z < outChannels; z++) {
+                out.put((byte)(m == 0 ? 0 : Math.round(buffer[order[z]]*255)));
+            }
+        }
+    }
+}
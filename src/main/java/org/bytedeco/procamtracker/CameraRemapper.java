@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.bytedeco.javacv.Parallel;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Undistorts camera images on the CPU with bilinear interpolation, like
+ * CameraDevice.undistort(), but only within a region of the destination. For 8-bit
+ * images, it also linearizes the gamma of the source pixels with a lookup table while
+ * reading them, across all cores. The grabbed image thus gets read and written only
+ * once, instead of twice over its whole area, with the gamma correction first.
+ *
+ * @author Samuel Audet
+ */
+class CameraRemapper {
+    /** @param map1 the undistortion maps at the resolution of the destination images, in any format cvRemap() accepts */
+    CameraRemapper(IplImage map1, IplImage map2) {
+        width = map1.width();
+        height = map1.height();
+        if (map1.depth() == IPL_DEPTH_32F && map1.nChannels() == 1 && map2 != null
+                && map2.depth() == IPL_DEPTH_32F && map2.nChannels() == 1) {
+            mapx = map1.clone();
+            mapy = map2.clone();
+        } else {
+            mapx = IplImage.create(width, height, IPL_DEPTH_32F, 1);
+            mapy = IplImage.create(width, height, IPL_DEPTH_32F, 1);
+            cvConvertMaps(map1, map2, mapx, mapy);
+        }
+        mapStep = mapx.widthStep()/4;
+        mapxBuffer = mapx.getFloatBuffer();
+        mapyBuffer = mapy.getFloatBuffer();
+        setGamma(1.0);
+    }
+
+    private final int width, height, mapStep;
+    private final IplImage mapx, mapy;
+    private final FloatBuffer mapxBuffer, mapyBuffer;
+    private final float[] lut = new float[256];
+    private double gamma = Double.NaN;
+
+    /**
+     * Returns true for 8-bit sources, whose gamma we can linearize, and destinations
+     * with the same channels, the size of the maps, and either 8-bit or floating-point,
+     * which then receive values normalized to [0, 1], ready for GNImageAligner.
+     */
+    public boolean isSupported(IplImage src, IplImage dst) {
+        return src.depth() == IPL_DEPTH_8U && (dst.depth() == IPL_DEPTH_8U || dst.depth() == IPL_DEPTH_32F)
+                && src.nChannels() == dst.nChannels() && dst.width() == width && dst.height() == height;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+    /** Sets the gamma to linearize, same as Java2DFrameConverter.applyGamma(), rebuilding the table only if it changed. */
+    public void setGamma(double gamma) {
+        if (gamma == this.gamma) {
+            return;
+        }
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = (float)(Math.pow(i/255.0, gamma)*255);
+        }
+        this.gamma = gamma;
+    }
+
+    /**
+     * Remaps src into dst, within roi of dst if not null, ignoring their own ROIs.
+     * Pixels mapping outside src get filled with zeros, like CV_WARP_FILL_OUTLIERS.
+     * Images not {@link #isSupported} go through cvRemap(), without gamma correction.
+     */
+    public void remap(IplImage src, IplImage dst, CvRect roi) {
+        if (!isSupported(src, dst)) {
+            if (roi != null && (roi.width() <= 0 || roi.height() <= 0)) {
+                return;
+            }
+            cvResetImageROI(src);
+            if (roi != null) {
+                cvSetImageROI(mapx, roi);
+                cvSetImageROI(mapy, roi);
+                cvSetImageROI(dst, roi);
+            } else {
+                cvResetImageROI(dst);
+            }
+            cvRemap(src, dst, mapx, mapy, CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, CvScalar.ZERO);
+            cvResetImageROI(mapx);
+            cvResetImageROI(mapy);
+            cvResetImageROI(dst);
+            return;
+        }
+        final int channels = src.nChannels();
+        final int srcWidth = src.width(), srcHeight = src.height();
+        final boolean floatOut = dst.depth() == IPL_DEPTH_32F;
+        final int srcStep = src.widthStep(), dstStep = floatOut ? dst.widthStep()/4 : dst.widthStep();
+        final int x0 = roi == null ? 0 : Math.max(0, roi.x());
+        final int x1 = roi == null ? width : Math.min(width, roi.x() + roi.width());
+        final int y0 = roi == null ? 0 : Math.max(0, roi.y());
+        final int y1 = roi == null ? height : Math.min(height, roi.y() + roi.height());
+        final ByteBuffer in = src.getByteBuffer();
+        final ByteBuffer out = floatOut ? null : dst.getByteBuffer();
+        final FloatBuffer outFloat = floatOut ? dst.getFloatBuffer() : null;
+        final FloatBuffer mx = mapxBuffer, my = mapyBuffer;
+        final float[] lut = this.lut;
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        Parallel.loop(y0, y1, new Parallel.Looper() {
+        public void loop(int from, int to, int looperID) {
+        for (int y = from; y < to; y++) {
+            int mapPixel = y*mapStep + x0, outPixel = y*dstStep + x0*channels;
+            for (int x = x0; x < x1; x++, mapPixel++, outPixel += channels) {
+                float sx = mx.get(mapPixel), sy = my.get(mapPixel);
+                int ix = (int)Math.floor(sx), iy = (int)Math.floor(sy);
+                float fx = sx - ix, fy = sy - iy;
+                float w00 = (1-fx)*(1-fy), w01 = fx*(1-fy), w10 = (1-fx)*fy, w11 = fx*fy;
+                if (ix >= 0 && iy >= 0 && ix + 1 < srcWidth && iy + 1 < srcHeight) {
+                    int p00 = iy*srcStep + ix*channels, p10 = p00 + srcStep;
+                    for (int z = 0; z < channels; z++) {
+                        float v = w00*lut[in.get(p00 + z) & 0xFF] + w01*lut[in.get(p00 + channels + z) & 0xFF]
+                                + w10*lut[in.get(p10 + z) & 0xFF] + w11*lut[in.get(p10 + channels + z) & 0xFF];
+                        store(outPixel + z, v);
+                    }
+                } else if (ix < -1 || iy < -1 || ix >= srcWidth || iy >= srcHeight) {
+                    for (int z = 0; z < channels; z++) {
+                        store(outPixel + z, 0);
+                    }
+                } else {
+                    // on the border, the pixels outside count as zeros
+                    for (int z = 0; z < channels; z++) {
+                        float v = w00*sample(in, ix,   iy,   z) + w01*sample(in, ix+1, iy,   z)
+                                + w10*sample(in, ix,   iy+1, z) + w11*sample(in, ix+1, iy+1, z);
+                        store(outPixel + z, v);
+                    }
+                }
+            }
+        }}
+
+        float sample(ByteBuffer in, int x, int y, int z) {
+            return x < 0 || y < 0 || x >= srcWidth || y >= srcHeight ? 0
+                    : lut[in.get(y*srcStep + x*channels + z) & 0xFF];
+        }
+
+        void store(int i, float v) {
+            if (floatOut) {
+                outFloat.put(i, v*(1/255f));
+            } else {
+                out.put(i, (byte)(int)(v + 0.5f));
+            }
+        }});
+    }
+
+    public void release() {
+        mapx.release();
+        mapy.release();
+    }
+}
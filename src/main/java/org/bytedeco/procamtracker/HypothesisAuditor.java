@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.bytedeco.javacv.CameraDevice;
+import org.bytedeco.javacv.GNImageAligner;
+import org.bytedeco.javacv.ImageTransformer;
+import org.bytedeco.javacv.ProCamTransformer;
+import org.bytedeco.javacv.ProjectorDevice;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+/**
+ * Scores several parameter hypotheses at the audit pyramid level at once, each
+ * with its own aligner and transformer on its own core, instead of swapping them
+ * one after the other into the aligner used for tracking, which stays untouched.
+ * The aligners follow the same projector and camera images as the one for tracking,
+ * but build their pyramids only down to the audit level, since on every frame,
+ * GNImageAligner.setTargetImage() reduces the target image to all the levels up to
+ * the maximum of its settings, and resets the pyramid level to that maximum.
+ *
+ * @author Samuel Audet
+ */
+class HypothesisAuditor {
+    HypothesisAuditor(int count, int pyramidLevel, ForkJoinPool pool, double[] referencePoints,
+            CameraDevice camera, ProjectorDevice projector, CvMat n0, ProCamTransformer.Parameters parameters,
+            IplImage reflectanceImage, double[] roiPts, IplImage projectorImage, IplImage targetImage,
+            GNImageAligner.Settings settings) {
+        this.pool = pool;
+        this.transformers = new ProCamTransformer[count];
+        this.aligners = new GNImageAligner[count];
+        this.scorers = new Scorer[count];
+        settings = settings.clone();
+        settings.setPyramidLevelMax(Math.max(settings.getPyramidLevelMin(), pyramidLevel));
+        this.pyramidLevel = settings.getPyramidLevelMax();
+        for (int i = 0; i < count; i++) {
+            transformers[i] = new ProCamTransformer(referencePoints, camera, projector, n0);
+            transformers[i].setProjectorImage(projectorImage, 0, this.pyramidLevel);
+            aligners[i] = new GNImageAligner(transformers[i], parameters, reflectanceImage,
+                    roiPts, targetImage, settings);
+            aligners[i].setPyramidLevel(this.pyramidLevel);
+            scorers[i] = new Scorer(aligners[i]);
+        }
+    }
+
+    private final int pyramidLevel;
+    private final ForkJoinPool pool;
+    private final ProCamTransformer[] transformers;
+    private final GNImageAligner[] aligners;
+    private final Scorer[] scorers;
+
+    /** Computes the RMSE of one hypothesis. */
+    private static class Scorer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        Scorer(GNImageAligner aligner) {
+            this.aligner = aligner;
+        }
+
+        final GNImageAligner aligner;
+        ImageTransformer.Parameters parameters;
+        double RMSE;
+
+        @Override protected void compute() {
+            aligner.setParameters(parameters);
+            RMSE = aligner.getRMSE();
+        }
+    }
+
+    /** Returns the maximum number of hypotheses per audit. */
+    public int getCount() {
+        return aligners.length;
+    }
+
+    public void setProjectorImage(IplImage projectorImage, int maxLevel) {
+        for (ProCamTransformer t : transformers) {
+            t.setProjectorImage(projectorImage, 0, Math.min(maxLevel, pyramidLevel));
+        }
+    }
+
+    public void setTargetImage(IplImage targetImage) {
+        for (GNImageAligner a : aligners) {
+            a.setTargetImage(targetImage);
+        }
+    }
+
+    /**
+     * Scores the first n hypotheses in parallel, the first one on the calling thread.
+     *
+     * @return the index of the hypothesis with the lowest RMSE, the earliest one on ties,
+     *         or 0 if none of them has a valid RMSE
+     */
+    public int audit(ImageTransformer.Parameters[] hypotheses, int n) {
+        for (int i = 0; i < n; i++) {
+            scorers[i].reinitialize();
+            scorers[i].parameters = hypotheses[i];
+        }
+        for (int i = 1; i < n; i++) {
+            pool.execute(scorers[i]);
+        }
+        scorers[0].invoke();
+        int best = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                scorers[i].join();
+            }
+            double RMSE = scorers[i].RMSE;
+            if (RMSE < scorers[best].RMSE || (Double.isNaN(scorers[best].RMSE) && !Double.isNaN(RMSE))) {
+                best = i;
+            }
+            scorers[i].parameters = null;
+        }
+        return best;
+    }
+
+    /** Returns the RMSE of the given hypothesis in the last audit. */
+    public double getRMSE(int i) {
+        return scorers[i].RMSE;
+    }
+
+    /** Returns the aligner of the given hypothesis, for example to inspect its outliers. */
+    public GNImageAligner getAligner(int i) {
+        return aligners[i];
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.beans.XMLEncoder;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import org.bytedeco.javacv.BaseSettings;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Keeps the results of reflectance and plane initialization in a memory-mapped
+ * binary file, so that tracking can start without projecting the initialization
+ * patterns when nothing changed since the last run. Entries are identified by a
+ * SHA-1 key over everything that affects them, usually settings and the content
+ * of the calibration and texture files, as returned by {@link #createKey(Object...)}.
+ * <p>
+ * The layout, in native byte order, is a header of magic number, version, key,
+ * image width, height, and channels, and the index of the object in the settings
+ * of {@link RealityAugmentor}, followed by the ROI points, the gains
+ * and ambient light, the plane parameters n0 (with 0 rows when null), and the
+ * 32-bit floating-point pixels of the reflectance image.
+ *
+ * @author Samuel Audet
+ */
+public class InitializationCache {
+
+    static final int MAGIC = 0x50435443, VERSION = 1, KEY_LENGTH = 20;
+
+    public InitializationCache(File file, byte[] key) {
+        this.file = file;
+        this.key = key;
+    }
+
+    private final File file;
+    private final byte[] key;
+    private int objectIndex = -1;
+    private double[] roiPts = null, gainAmbientLight = null;
+    private CvMat n0 = null;
+
+    public File getFile() {
+        return file;
+    }
+    public int getObjectIndex() {
+        return objectIndex;
+    }
+    public double[] getRoiPts() {
+        return roiPts;
+    }
+    public double[] getGainAmbientLight() {
+        return gainAmbientLight;
+    }
+    public CvMat getN0() {
+        return n0;
+    }
+
+    /** Hashes files by path and content, settings by their XML encoding, and anything else by its string value. */
+    public static byte[] createKey(Object ... objects) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        byte[] buffer = new byte[64*1024];
+        for (Object o : objects) {
+            if (o instanceof File) {
+                File f = (File)o;
+                digest.update(f.getAbsolutePath().getBytes("UTF-8"));
+                if (f.isFile()) {
+                    InputStream in = new FileInputStream(f);
+                    try {
+                        int n;
+                        while ((n = in.read(buffer)) > 0) {
+                            digest.update(buffer, 0, n);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+            } else if (o instanceof BaseSettings) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                XMLEncoder encoder = new XMLEncoder(out);
+                encoder.writeObject(o);
+                encoder.close();
+                digest.update(out.toByteArray());
+            } else {
+                digest.update(String.valueOf(o).getBytes("UTF-8"));
+            }
+            digest.update((byte)0);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Fills reflectanceImage and loads the other results if the file exists,
+     * matches the key, and has an image of the same size.
+     *
+     * @return true on success, false on a miss or a corrupted file, leaving everything untouched
+     */
+    public boolean read(IplImage reflectanceImage) throws IOException {
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.nativeOrder());
+            if (map.remaining() < 8 + KEY_LENGTH + 16 || map.getInt() != MAGIC || map.getInt() != VERSION) {
+                return false;
+            }
+            byte[] k = new byte[KEY_LENGTH];
+            map.get(k);
+            int width = map.getInt(), height = map.getInt(), channels = map.getInt(), objectIndex = map.getInt();
+            if (!Arrays.equals(k, key) || width != reflectanceImage.width() || height != reflectanceImage.height()
+                    || channels != reflectanceImage.nChannels() || reflectanceImage.depth() != IPL_DEPTH_32F) {
+                return false;
+            }
+            double[] roiPts = readDoubles(map);
+            double[] gainAmbientLight = roiPts == null ? null : readDoubles(map);
+            if (gainAmbientLight == null || map.remaining() < 8) {
+                return false;
+            }
+            int rows = map.getInt(), cols = map.getInt();
+            if (rows < 0 || cols < 0 || (long)rows*cols*8 > map.remaining()) {
+                return false;
+            }
+            CvMat n0 = null;
+            if (rows > 0 && cols > 0) {
+                n0 = CvMat.create(rows, cols);
+                for (int i = 0; i < rows*cols; i++) {
+                    n0.put(i, map.getDouble());
+                }
+            }
+
+            int rowBytes = width*channels*4;
+            if (map.remaining() != (long)height*rowBytes) {
+                return false;
+            }
+            cvResetImageROI(reflectanceImage);
+            ByteBuffer pixels = reflectanceImage.getByteBuffer();
+            int step = reflectanceImage.widthStep();
+            ByteBuffer src = map.duplicate();
+            for (int y = 0; y < height; y++) {
+                src.limit(src.position() + rowBytes);
+                pixels.position(y*step);
+                pixels.put(src);
+                src.limit(src.capacity());
+            }
+            this.objectIndex = objectIndex;
+            this.roiPts = roiPts;
+            this.gainAmbientLight = gainAmbientLight;
+            this.n0 = n0;
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Returns the array of doubles prefixed by its length at the position of map, or null if it overflows. */
+    private static double[] readDoubles(ByteBuffer map) {
+        if (map.remaining() < 4) {
+            return null;
+        }
+        int n = map.getInt();
+        if (n < 0 || (long)n*8 > map.remaining()) {
+            return null;
+        }
+        double[] a = new double[n];
+        map.asDoubleBuffer().get(a);
+        map.position(map.position() + n*8);
+        return a;
+    }
+
+    /** Replaces the content of the file with the given results. */
+    public void write(IplImage reflectanceImage, int objectIndex, double[] roiPts, CvMat n0,
+            double[] gainAmbientLight) throws IOException {
+        int width = reflectanceImage.width(), height = reflectanceImage.height(), channels = reflectanceImage.nChannels();
+        int rows = n0 == null ? 0 : n0.rows(), cols = n0 == null ? 0 : n0.cols();
+        int rowBytes = width*channels*4;
+        long size = 8 + KEY_LENGTH + 16 + 4 + roiPts.length*8 + 4 + gainAmbientLight.length*8
+                  + 8 + rows*cols*8 + (long)height*rowBytes;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.nativeOrder());
+            // write the magic number last, so an interrupted write never looks valid
+            map.putInt(0).putInt(VERSION).put(key);
+            map.putInt(width).putInt(height).putInt(channels).putInt(objectIndex);
+            map.putInt(roiPts.length);
+            for (double d : roiPts) {
+                map.putDouble(d);
+            }
+            map.putInt(gainAmbientLight.length);
+            for (double d : gainAmbientLight) {
+                map.putDouble(d);
+            }
+            map.putInt(rows).putInt(cols);
+            for (int i = 0; i < rows*cols; i++) {
+                map.putDouble(n0.get(i));
+            }
+
+            cvResetImageROI(reflectanceImage);
+            ByteBuffer pixels = reflectanceImage.getByteBuffer();
+            int step = reflectanceImage.widthStep();
+            for (int y = 0; y < height; y++) {
+                pixels.limit(y*step + rowBytes).position(y*step);
+                map.put(pixels);
+                pixels.limit(pixels.capacity());
+            }
+            map.force();
+            map.putInt(0, MAGIC);
+            map.force();
+        } finally {
+            raf.close();
+        }
+        this.objectIndex = objectIndex;
+        this.roiPts = roiPts;
+        this.gainAmbientLight = gainAmbientLight;
+        this.n0 = n0;
+    }
+}
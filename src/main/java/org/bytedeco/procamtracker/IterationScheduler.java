@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+/**
+ * Decides, before each iteration of the aligner, whether it still fits in the
+ * current frame period, and at which pyramid level. The deadline of a frame is the
+ * time its image arrived plus the frame period, minus the time the loop spent on
+ * average between iterating and grabbing the next frame (audit, HandMouse, display,
+ * and projector update), minus a safety margin. Waiting for the camera does not
+ * count, since it only lasts until the next frame arrives. The cost of an iteration
+ * at some pyramid level is the mean of all those measured so far.
+ *
+ * @author Samuel Audet
+ */
+public class IterationScheduler {
+    /**
+     * @param frameRate the rate of the camera, or 0 to never stop iterating early
+     * @param margin    the safety margin in nanoseconds before the deadline
+     */
+    public IterationScheduler(double frameRate, long margin) {
+        this.framePeriod = frameRate > 0 ? Math.round(1000000000 / frameRate) : 0;
+        this.margin = margin;
+    }
+
+    private final long framePeriod, margin;
+    private double overhead = -1;
+    private long deadline = 0;
+    private int deadlineStops = 0, levelSkips = 0;
+
+    /** Returns how many frames stopped iterating because of the deadline. */
+    public int getDeadlineStops() {
+        return deadlineStops;
+    }
+    /** Returns how many times iterating moved to the finest level to fit in the deadline. */
+    public int getLevelSkips() {
+        return levelSkips;
+    }
+
+    /** Sets the deadline of the frame whose image got grabbed at the given time. */
+    public void startFrame(long arrivalTime) {
+        deadline = arrivalTime + framePeriod - Math.max(0, Math.round(overhead)) - margin;
+    }
+
+    /**
+     * Records, with an exponential moving average, the time taken by the frame between
+     * the end of iterating and the start of grabbing the next frame.
+     */
+    public void endFrame(long overheadTime) {
+        long t = Math.max(0, overheadTime);
+        overhead = overhead < 0 ? t : 0.9*overhead + 0.1*t;
+    }
+
+    static double meanCost(int level, double[] iterationTime, int[] iterationCount, int[] iterationsPerLevel) {
+        int n = iterationCount[level] + iterationsPerLevel[level];
+        return n > 0 ? iterationTime[level] / n : 0;
+    }
+
+    /**
+     * Returns the pyramid level at which to do the next iteration, which is either the
+     * current level, or the finest level when there is time left for one iteration only
+     * there, or -1 when no iteration fits before the deadline.
+     */
+    public int nextLevel(int level, int minLevel, double[] iterationTime, int[] iterationCount,
+            int[] iterationsPerLevel, long now) {
+        if (framePeriod <= 0) {
+            return level;
+        }
+        long remaining = deadline - now;
+        double cost = meanCost(level,    iterationTime, iterationCount, iterationsPerLevel);
+        double fine = meanCost(minLevel, iterationTime, iterationCount, iterationsPerLevel);
+        if (level > minLevel && cost + fine > remaining && fine <= remaining) {
+            // better refine at the finest level than finish coarse
+            levelSkips++;
+            return minLevel;
+        } else if (cost <= remaining) {
+            return level;
+        } else {
+            deadlineStops++;
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.logging.Logger;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Measures how many frames and milliseconds it takes for an image shown on the
+ * projector to appear in the grabbed frames, to find the projectorBufferingSize
+ * and proCamPhaseShift of {@link TrackingWorker.Settings} giving the lowest latency.
+ * <p>
+ * It projects a maximum length sequence of black and white frames, triggering the
+ * camera after each one with a delay, the phase shift, as {@link TrackingEngine} does,
+ * while the previous frame gets grabbed on another thread, and finds the lag in
+ * frames that matches the sequence decoded from the mean brightness of the grabbed
+ * frames. It does so for phase shifts covering a whole frame period, and picks the
+ * one with the lowest latency that decodes cleanly, adding a margin for the jitter.
+ *
+ * @author Samuel Audet
+ */
+class LatencyCalibrator {
+    LatencyCalibrator(TrackingEngine.ProjectorSink projectorSink, FrameGrabber frameGrabber,
+            int projectorWidth, int projectorHeight) {
+        this.projectorSink = projectorSink;
+        this.frameGrabber = frameGrabber;
+        this.projectorWidth = projectorWidth;
+        this.projectorHeight = projectorHeight;
+    }
+
+    /** The values found, along with the latency and jitter measured for them. */
+    public static class Result {
+        int projectorBufferingSize, proCamPhaseShift;
+        double latency, jitter;
+
+        public int getProjectorBufferingSize() {
+            return projectorBufferingSize;
+        }
+        public int getProCamPhaseShift() {
+            return proCamPhaseShift;
+        }
+        /** Returns the time from showing an image until the camera gets triggered to capture it, in ms. */
+        public double getLatency() {
+            return latency;
+        }
+        /** Returns the standard deviation of the time from showing an image until its frame gets grabbed, in ms. */
+        public double getJitter() {
+            return jitter;
+        }
+
+        @Override public String toString() {
+            return "projectorBufferingSize = " + projectorBufferingSize + "  proCamPhaseShift = " + proCamPhaseShift +
+                    "  latency = " + (float)latency + " ms  jitter = " + (float)jitter + " ms";
+        }
+    }
+
+    /** What we measured with one phase shift. */
+    private static class Phase {
+        int phaseShift, lag = -1, errors, mixed;
+        double jitter;
+        boolean isClean(int frames) {
+            return lag >= 0 && errors == 0 && mixed <= frames/20;
+        }
+    }
+
+    // a maximum length sequence from the LFSR x^5 + x^3 + 1, whose period is 31
+    static final int SEQUENCE_LENGTH = 31;
+    static final boolean[] SEQUENCE = new boolean[SEQUENCE_LENGTH];
+    static {
+        int state = 1;
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            SEQUENCE[i] = (state & 1) != 0;
+            int bit = ((state >> 0) ^ (state >> 2)) & 1;
+            state = (state >> 1) | (bit << 4);
+        }
+    }
+
+    private final TrackingEngine.ProjectorSink projectorSink;
+    private final FrameGrabber frameGrabber;
+    private final int projectorWidth, projectorHeight;
+    private int phaseStep = 2;
+
+    // per frame of the current phase, written by the grab stage
+    private final double[] brightness = new double[2*SEQUENCE_LENGTH];
+    private final long[] showTimes = new long[2*SEQUENCE_LENGTH], grabTimes = new long[2*SEQUENCE_LENGTH];
+
+    private static final Logger logger = Logger.getLogger(LatencyCalibrator.class.getName());
+
+    public int getPhaseStep() {
+        return phaseStep;
+    }
+    /** Sets the interval in ms between the phase shifts tried, 2 by default. */
+    public void setPhaseStep(int phaseStep) {
+        this.phaseStep = phaseStep;
+    }
+
+    /**
+     * Tries all phase shifts, which takes about 2*31 frames per phase shift.
+     *
+     * @return the best values found, or null if the projector images could not be detected
+     */
+    public Result calibrate() throws Exception {
+        double frameRate = frameGrabber.getFrameRate();
+        if (frameRate <= 0) {
+            logger.warning("Cannot calibrate latency without the frame rate of the camera.");
+            return null;
+        }
+        double period = 1000 / frameRate;
+        IplImage black = IplImage.create(projectorWidth, projectorHeight, IPL_DEPTH_8U, 3);
+        IplImage white = IplImage.create(projectorWidth, projectorHeight, IPL_DEPTH_8U, 3);
+        cvSetZero(black);
+        cvSet(white, CvScalar.WHITE);
+
+        PipelineStage<Integer, Integer> grabStage = new PipelineStage<Integer, Integer>("calibration", 2) {
+            final OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
+            public Integer process(Integer i) throws Exception {
+                // the frame of the delayed grab started right after showing image i
+                IplImage image = converter.convert(frameGrabber.getDelayedFrame());
+                if (image == null) {
+                    image = converter.convert(frameGrabber.grab());
+                }
+                grabTimes[i] = System.nanoTime();
+                CvScalar mean = cvAvg(image);
+                brightness[i] = mean.val(0) + mean.val(1) + mean.val(2) + mean.val(3);
+                return i;
+            }
+        };
+
+        int count = (int)Math.ceil(period / phaseStep);
+        Phase[] phases = new Phase[count];
+        try {
+            grabStage.start();
+            for (int k = 0; k < count; k++) {
+                phases[k] = measure(k*phaseStep, black, white, grabStage);
+                logger.fine("phaseShift = " + phases[k].phaseShift + "  lag = " + phases[k].lag + "  errors = " +
+                        phases[k].errors + "  mixed = " + phases[k].mixed + "  jitter = " + (float)phases[k].jitter);
+            }
+        } finally {
+            grabStage.stop();
+            projectorSink.showImage(black);
+            black.release();
+            white.release();
+        }
+
+        int best = -1;
+        for (int k = 0; k < count; k++) {
+            Phase p = phases[k];
+            if (p.isClean(SEQUENCE_LENGTH) && (best < 0 ||
+                    p.lag*period + p.phaseShift < phases[best].lag*period + phases[best].phaseShift)) {
+                best = k;
+            }
+        }
+        if (best < 0) {
+            logger.warning("Could not detect the projector images in the camera frames at any phase shift.");
+            return null;
+        }
+
+        // the best one sits where captures start to see the image, so move away from that edge
+        Phase p = phases[best];
+        int margin = Math.max(phaseStep, (int)Math.ceil(2*p.jitter));
+        int k = (p.phaseShift + margin + phaseStep - 1) / phaseStep;
+        Result r = new Result();
+        r.projectorBufferingSize = 3 + p.lag;
+        r.proCamPhaseShift = p.phaseShift;
+        if (k < count && phases[k].isClean(SEQUENCE_LENGTH) && phases[k].lag == p.lag) {
+            r.proCamPhaseShift = p.phaseShift + margin;
+        }
+        r.latency = p.lag*period + r.proCamPhaseShift;
+        r.jitter = p.jitter;
+        return r;
+    }
+
+    /** Shows the sequence twice, grabbing with the given phase shift, and decodes the second half. */
+    private Phase measure(int phaseShift, IplImage black, IplImage white,
+            PipelineStage<Integer, Integer> grabStage) throws Exception {
+        int n = 2*SEQUENCE_LENGTH;
+        // let the camera and the projector settle
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            projectorSink.showImage(black);
+        }
+        projectorSink.waitLatency();
+        frameGrabber.flush();
+        for (int i = 0; i <= n; i++) {
+            if (i > 0) {
+                // the frame triggered after showing the previous image
+                grabStage.submit(i - 1);
+            }
+            if (i < n) {
+                projectorSink.showImage(SEQUENCE[i % SEQUENCE_LENGTH] ? white : black);
+                showTimes[i] = System.nanoTime();
+            }
+            if (i > 0) {
+                // delayedGrab() drops the frame of the previous one, so get it first
+                grabStage.await();
+            }
+            if (i < n) {
+                long elapsed = (System.nanoTime() - showTimes[i]) / 1000;
+                frameGrabber.delayedGrab(Math.max(0, phaseShift * 1000 - elapsed));
+            }
+        }
+
+        Phase p = new Phase();
+        p.phaseShift = phaseShift;
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = SEQUENCE_LENGTH; i < n; i++) {
+            min = Math.min(min, brightness[i]);
+            max = Math.max(max, brightness[i]);
+        }
+        if (max - min < 0.05 * max) {
+            // nothing detected
+            p.errors = SEQUENCE_LENGTH;
+            return p;
+        }
+        double threshold = (min + max) / 2;
+        for (int i = SEQUENCE_LENGTH; i < n; i++) {
+            if (Math.abs(brightness[i] - threshold) < (max - min) / 4) {
+                p.mixed++;
+            }
+        }
+        p.errors = Integer.MAX_VALUE;
+        for (int lag = 0; lag < SEQUENCE_LENGTH; lag++) {
+            int errors = 0;
+            for (int i = SEQUENCE_LENGTH; i < n; i++) {
+                if ((brightness[i] > threshold) != SEQUENCE[(i - lag) % SEQUENCE_LENGTH]) {
+                    errors++;
+                }
+            }
+            if (errors < p.errors) {
+                p.errors = errors;
+                p.lag = lag;
+            }
+        }
+        double sum = 0, sum2 = 0;
+        for (int i = SEQUENCE_LENGTH; i < n; i++) {
+            double t = (grabTimes[i] - showTimes[i]) / 1e6;
+            sum  += t;
+            sum2 += t*t;
+        }
+        double mean = sum / SEQUENCE_LENGTH;
+        p.jitter = Math.sqrt(Math.max(0, sum2 / SEQUENCE_LENGTH - mean*mean));
+        return p;
+    }
+}
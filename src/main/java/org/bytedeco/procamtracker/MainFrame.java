@@ -27,6 +27,8 @@ import java.awt.Dialog.ModalityType;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.beans.IntrospectionException;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -46,6 +48,9 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -64,6 +69,7 @@ import javax.swing.JTextArea;
 import javax.swing.JTextPane;
 import javax.swing.KeyStroke;
 import javax.swing.SwingWorker.StateValue;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkEvent.EventType;
@@ -91,6 +97,7 @@ import org.openide.nodes.Node;
 import org.openide.util.Lookup;
 import org.openide.windows.IOContainer;
 import org.openide.windows.InputOutput;
+import org.openide.windows.OutputWriter;
 
 import org.bytedeco.opencv.opencv_core.*;
 import static org.bytedeco.opencv.global.opencv_core.*;
@@ -144,50 +151,7 @@ public class MainFrame extends javax.swing.JFrame implements
 
         settingsFile = args.length > 0 ? new File(args[0]) : null;
         try {
-            Logger.getLogger("").addHandler(new Handler() {
-                {
-                    setFormatter(new SimpleFormatter());
-                }
-                @Override public void publish(final LogRecord record) {
-                    final String title;
-                    final int messageType;
-                    if (record.getLevel().equals(Level.SEVERE)) {
-                        title = "SEVERE Logging Message";
-                        messageType = JOptionPane.ERROR_MESSAGE;
-                    } else if (record.getLevel().equals(Level.WARNING)) {
-                        title = "WARNING Logging Message";
-                        messageType = JOptionPane.WARNING_MESSAGE;
-                    } else if (record.getLevel().equals(Level.INFO)) {
-                        title = "INFO Logging Message";
-                        messageType = JOptionPane.INFORMATION_MESSAGE;
-                    } else {
-                        title = "Tracing Logging Message";
-                        messageType = JOptionPane.PLAIN_MESSAGE;
-                    }
-                    String[] messageLines = getFormatter().format(record).split("\r\n|\r|\n");
-                    StringBuilder messageBuilder = new StringBuilder();
-                    for (int i = 0; i < Math.min(5, messageLines.length); i++) {
-                        messageBuilder.append(messageLines[i] + '\n');
-                    }
-                    if (messageLines.length > 5) {
-                        messageBuilder.append("...");
-                    }
-                    final String message = messageBuilder.toString();
-
-                    EventQueue.invokeLater(new Runnable() {
-                        public void run() {
-                            if (messageType == JOptionPane.INFORMATION_MESSAGE) {
-                                messagesio.getOut().println(getFormatter().formatMessage(record));
-                            } else {
-                                JOptionPane.showMessageDialog(MainFrame.this,
-                                        message, title, messageType);
-                            }
-                        }
-                    });
-                }
-                @Override public void flush() { }
-                @Override public void close() throws SecurityException { }
-            });
+            Logger.getLogger("").addHandler(new MessagesHandler());
 
             cvRedirectError(new JavaCvErrorCallback() {
                 @Override public int call(int status, BytePointer func_name, BytePointer err_msg,
@@ -240,6 +204,91 @@ public class MainFrame extends javax.swing.JFrame implements
 
     private InputOutput messagesio;
 
+    /**
+     * Shows warnings and errors in dialog boxes, and other messages in the messages
+     * window. Messages get queued without blocking and printed in batches by a Swing
+     * timer, at most MESSAGES_PER_TICK at a time, so that logging from the tracker at
+     * camera rate cannot flood the Event Dispatch Thread. Messages beyond MESSAGES_QUEUED_MAX
+     * get dropped and counted, and the window gets cleared after MESSAGES_SCROLLBACK_MAX.
+     */
+    class MessagesHandler extends Handler implements ActionListener {
+        static final int TICK_MILLIS = 100, MESSAGES_PER_TICK = 100,
+                MESSAGES_QUEUED_MAX = 10000, MESSAGES_SCROLLBACK_MAX = 100000;
+
+        MessagesHandler() {
+            setFormatter(new SimpleFormatter());
+            new Timer(TICK_MILLIS, this).start();
+        }
+
+        final ConcurrentLinkedQueue<LogRecord> queue = new ConcurrentLinkedQueue<LogRecord>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicLong dropped = new AtomicLong();
+        int printed = 0;
+
+        @Override public void publish(LogRecord record) {
+            final String title;
+            final int messageType;
+            if (record.getLevel().equals(Level.SEVERE)) {
+                title = "SEVERE Logging Message";
+                messageType = JOptionPane.ERROR_MESSAGE;
+            } else if (record.getLevel().equals(Level.WARNING)) {
+                title = "WARNING Logging Message";
+                messageType = JOptionPane.WARNING_MESSAGE;
+            } else {
+                if (queued.incrementAndGet() > MESSAGES_QUEUED_MAX) {
+                    queued.decrementAndGet();
+                    dropped.incrementAndGet();
+                } else {
+                    queue.offer(record);
+                }
+                return;
+            }
+            String[] messageLines = getFormatter().format(record).split("\r\n|\r|\n");
+            StringBuilder messageBuilder = new StringBuilder();
+            for (int i = 0; i < Math.min(5, messageLines.length); i++) {
+                messageBuilder.append(messageLines[i] + '\n');
+            }
+            if (messageLines.length > 5) {
+                messageBuilder.append("...");
+            }
+            final String message = messageBuilder.toString();
+
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    JOptionPane.showMessageDialog(MainFrame.this,
+                            message, title, messageType);
+                }
+            });
+        }
+        @Override public void flush() { }
+        @Override public void close() throws SecurityException { }
+
+        // called by the timer on the Event Dispatch Thread
+        public void actionPerformed(ActionEvent e) {
+            if (messagesio == null || queue.isEmpty() && dropped.get() == 0) {
+                return;
+            }
+            OutputWriter out = messagesio.getOut();
+            if (printed > MESSAGES_SCROLLBACK_MAX) {
+                try {
+                    out.reset();
+                    printed = 0;
+                } catch (IOException ex) { }
+            }
+            LogRecord record;
+            for (int i = 0; i < MESSAGES_PER_TICK && (record = queue.poll()) != null; i++) {
+                queued.decrementAndGet();
+                out.println(getFormatter().formatMessage(record));
+                printed++;
+            }
+            long n = dropped.getAndSet(0);
+            if (n > 0) {
+                out.println("(" + n + " messages dropped)");
+                printed++;
+            }
+        }
+    }
+
     // ...method as before and getLookup
     public ExplorerManager getExplorerManager() {
         return manager;
@@ -283,6 +332,8 @@ public class MainFrame extends javax.swing.JFrame implements
         editors.put("objectImage", null);
         editors.put("gammaTgamma", null);
         editors.put("outputVideoFilename", null);
+        editors.put("initializationCacheFilename", null);
+        editors.put("telemetryFilename", null);
         editors.put("textureImageFilename", null);
         editors.put("projectorImageFilename", null);
         editors.put("projectorVideoFilename", null);
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacv.CanvasFrame;
+import org.bytedeco.javacv.HandMouse;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.javacv.ProCamTransformer;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Displays the monitor windows of {@link TrackingEngine} on its own thread. The
+ * tracking loop only copies the images to display into a free snapshot, at most
+ * at the maximum frame rate, and this thread converts and shows the latest one,
+ * dropping those it did not get to, and skipping windows shown too recently.
+ * Snapshots rotate among three, so neither thread ever waits for the other.
+ *
+ * @author Samuel Audet
+ */
+class MonitorRenderer implements Runnable {
+    /**
+     * @param windows   the monitor windows, of which those from index 1 get updated
+     * @param frameRate the maximum number of images per second shown in each window, or 0 for no limit
+     * @param undistortMap1 the maps to undistort grabbed images at pyramid level 0, for the marker detector,
+     *                      released by {@link #stop()}
+     */
+    MonitorRenderer(CanvasFrame[] windows, double frameRate, IplImage undistortMap1, IplImage undistortMap2) {
+        this.windows = windows;
+        this.interval = frameRate > 0 ? (long)(1000000000L / frameRate) : 0;
+        this.undistortMap1 = undistortMap1;
+        this.undistortMap2 = undistortMap2;
+        this.converters = new OpenCVFrameConverter.ToIplImage[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            converters[i] = new OpenCVFrameConverter.ToIplImage();
+        }
+        this.lastShowTimes = new long[windows.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new Snapshot();
+        }
+    }
+
+    /** What the tracking loop wants displayed for one frame. */
+    static class Snapshot {
+        int pyramidLevel;
+        double scale;
+        IplImage target, transformed, residual, mask, grabbed, relativeResidual, mouseImage;
+        boolean hasGrabbed, hasRelativeResidual, hasMouseImage;
+        ProCamTransformer transformer;
+        ProCamTransformer.Parameters parameters;
+        RealityAugmentor augmentor;
+
+        void release() {
+            for (IplImage image : new IplImage[] { target, transformed, residual,
+                    mask, grabbed, relativeResidual, mouseImage }) {
+                if (image != null) {
+                    image.release();
+                }
+            }
+        }
+    }
+
+    private final CanvasFrame[] windows;
+    private final OpenCVFrameConverter.ToIplImage[] converters;
+    private final long interval;
+    private final long[] lastShowTimes;
+    private final IplImage undistortMap1, undistortMap2;
+    private IplImage[] monitorImages = new IplImage[0];
+    private IplImage undistortedImage = null;
+
+    private final Snapshot[] snapshots = new Snapshot[3];
+    // guarded by this
+    private Snapshot latest = null, rendering = null;
+    private long lastOfferTime = 0;
+    private Thread thread = null;
+
+    private volatile String roiLogString = null;
+    private volatile long droppedCount = 0, renderedCount = 0;
+
+    private static final Logger logger = Logger.getLogger(MonitorRenderer.class.getName());
+
+    /** Returns what RealityAugmentor.drawRoi() returned for the last image rendered, or null. */
+    public String getRoiLogString() {
+        return roiLogString;
+    }
+    /** Returns the number of snapshots replaced by a newer one before getting rendered. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+    public long getRenderedCount() {
+        return renderedCount;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "ProCamTracker monitor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Stops the thread, after it finishes rendering, and releases all images. */
+    public void stop() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            notifyAll();
+        }
+        if (t != null) {
+            t.interrupt();
+            t.join();
+        }
+        for (Snapshot s : snapshots) {
+            s.release();
+        }
+        for (IplImage image : monitorImages) {
+            if (image != null) {
+                image.release();
+            }
+        }
+        if (undistortedImage != null) {
+            undistortedImage.release();
+        }
+        if (undistortMap1 != null) {
+            undistortMap1.release();
+            undistortMap2.release();
+        }
+    }
+
+    private boolean isVisible() {
+        for (int i = 1; i < windows.length; i++) {
+            if (windows[i] != null && windows[i].isVisible()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Copies the whole image, regardless of ROI, into dst, reallocated if needed. */
+    private static IplImage copy(IplImage src, IplImage dst) {
+        if (src == null) {
+            return dst;
+        }
+        if (dst == null || dst.width() != src.width() || dst.height() != src.height() ||
+                dst.depth() != src.depth() || dst.nChannels() != src.nChannels()) {
+            if (dst != null) {
+                dst.release();
+            }
+            dst = IplImage.create(src.width(), src.height(), src.depth(), src.nChannels());
+        }
+        Pointer.memcpy(dst.imageData(), src.imageData(), Math.min(src.imageSize(), dst.imageSize()));
+        return dst;
+    }
+
+    /**
+     * Called by the tracking loop for every frame. Unless a window is visible and
+     * enough time has passed since the last snapshot, returns right away.
+     *
+     * @param images what GNImageAligner.getImages() returns
+     * @return true if a snapshot was taken
+     */
+    public boolean offer(int pyramidLevel, double scale, IplImage[] images, IplImage grabbedImage,
+            HandMouse handMouse, ProCamTransformer transformer, ProCamTransformer.Parameters parameters,
+            RealityAugmentor augmentor) {
+        Snapshot s = null;
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (thread == null || (interval > 0 && now - lastOfferTime < interval) || !isVisible()) {
+                return false;
+            }
+            for (Snapshot t : snapshots) {
+                if (t != latest && t != rendering) {
+                    s = t;
+                    break;
+                }
+            }
+            lastOfferTime = now;
+        }
+
+        // only the tracking thread ever writes to a snapshot that is neither latest nor rendering
+        s.pyramidLevel = pyramidLevel;
+        s.scale        = scale;
+        s.target       = copy(images[1], s.target);
+        s.transformed  = copy(images[2], s.transformed);
+        s.residual     = copy(images[3], s.residual);
+        s.mask         = copy(images[4], s.mask);
+        RealityAugmentor.ObjectSettings os = augmentor.getObjectSettings();
+        s.hasGrabbed = os != null && os.roiAcquisitionMethod == RealityAugmentor.RoiAcquisitionMethod.MARKER_DETECTOR;
+        if (s.hasGrabbed) {
+            s.grabbed = copy(grabbedImage, s.grabbed);
+        }
+        IplImage relativeResidual = handMouse.getRelativeResidual();
+        IplImage mouseImage = handMouse.getResultImage();
+        s.hasRelativeResidual = relativeResidual != null;
+        s.hasMouseImage = mouseImage != null;
+        s.relativeResidual = copy(relativeResidual, s.relativeResidual);
+        s.mouseImage = copy(mouseImage, s.mouseImage);
+        if (s.transformer != transformer || s.parameters == null) {
+            s.transformer = transformer;
+            s.parameters = parameters.clone();
+        } else {
+            s.parameters.set(parameters);
+        }
+        s.augmentor = augmentor;
+
+        synchronized (this) {
+            if (latest != null) {
+                droppedCount++;
+            }
+            latest = s;
+            notifyAll();
+        }
+        return true;
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                Snapshot s;
+                synchronized (this) {
+                    rendering = null;
+                    while (thread != null && latest == null) {
+                        wait();
+                    }
+                    if (thread == null) {
+                        break;
+                    }
+                    s = rendering = latest;
+                    latest = null;
+                }
+                render(s);
+                renderedCount++;
+            }
+        } catch (InterruptedException ex) {
+            // stopped
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not render monitor images.", ex);
+        }
+        synchronized (this) {
+            rendering = null;
+        }
+    }
+
+    private boolean isDue(int window, long now) {
+        return window < windows.length && windows[window] != null && windows[window].isVisible()
+                && (interval <= 0 || now - lastShowTimes[window] >= interval);
+    }
+
+    private void show(int window, IplImage image, double scale, long now) {
+        windows[window].setCanvasScale(scale);
+        windows[window].showImage(converters[window].convert(image));
+        lastShowTimes[window] = now;
+    }
+
+    private IplImage getMonitorImage(IplImage floatImage, IplImage maskImage, int pyramidLevel) {
+        if (monitorImages.length <= pyramidLevel) {
+            IplImage[] a = new IplImage[pyramidLevel + 1];
+            System.arraycopy(monitorImages, 0, a, 0, monitorImages.length);
+            monitorImages = a;
+        }
+        IplImage m = monitorImages[pyramidLevel];
+        if (m == null || m.width() != floatImage.width() || m.height() != floatImage.height()) {
+            if (m != null) {
+                m.release();
+            }
+            m = monitorImages[pyramidLevel] = IplImage.create(floatImage.width(), floatImage.height(), IPL_DEPTH_8U, 3);
+        }
+        TrackingEngine.convertMonitorImage(floatImage, maskImage, m);
+        return m;
+    }
+
+    private void render(Snapshot s) throws Exception {
+        int p = s.pyramidLevel;
+        long now = System.nanoTime();
+        if (isDue(1, now)) {
+            show(1, getMonitorImage(s.transformed, s.mask, p), s.scale, now);
+        }
+        if (isDue(2, now)) {
+            IplImage monitorImage = getMonitorImage(s.target, null, p);
+            IplImage cameraImage = null;
+            if (s.hasGrabbed && undistortMap1 != null) {
+                if (undistortedImage == null || undistortedImage.width() != undistortMap1.width()
+                        || undistortedImage.height() != undistortMap1.height()
+                        || undistortedImage.nChannels() != s.grabbed.nChannels()) {
+                    if (undistortedImage != null) {
+                        undistortedImage.release();
+                    }
+                    undistortedImage = IplImage.create(undistortMap1.width(), undistortMap1.height(),
+                            s.grabbed.depth(), s.grabbed.nChannels());
+                }
+                cvRemap(s.grabbed, undistortedImage, undistortMap1, undistortMap2,
+                        CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, CvScalar.ZERO);
+                cameraImage = undistortedImage;
+            }
+            roiLogString = s.augmentor.drawRoi(monitorImage, p, cameraImage, 0, s.transformer, s.parameters);
+            show(2, monitorImage, s.scale, now);
+        }
+        if (isDue(3, now)) {
+            show(3, getMonitorImage(s.residual, s.mask, p), s.scale, now);
+        }
+        if (s.hasRelativeResidual && isDue(4, now)) {
+            show(4, s.relativeResidual, s.scale, now);
+        }
+        if (s.hasMouseImage && isDue(5, now)) {
+            show(5, s.mouseImage, s.scale, now);
+        }
+    }
+}
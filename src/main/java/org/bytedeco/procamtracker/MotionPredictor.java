@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import org.bytedeco.javacv.ImageTransformer;
+
+/**
+ * Predicts the parameters of the next frame with a constant velocity model.
+ * The aligner estimates are trusted as positions, while velocities get smoothed
+ * as with an alpha-beta filter, that is a Kalman filter in steady state.
+ * Parameters past a given index, such as gains and biases, are left alone.
+ *
+ * @author Samuel Audet
+ */
+public class MotionPredictor {
+    /**
+     * @param beta how fast the velocity follows changes, between 0 and 1
+     */
+    public MotionPredictor(double beta) {
+        this.beta = beta;
+    }
+
+    private final double beta;
+    private double[] position = null, velocity = null;
+
+    public void reset() {
+        position = velocity = null;
+    }
+
+    /** Records the parameters estimated for the last frame, from 0 until end. */
+    public void update(ImageTransformer.Parameters parameters, int end) {
+        if (position == null || position.length != end) {
+            position = new double[end];
+            velocity = new double[end];
+            for (int i = 0; i < end; i++) {
+                position[i] = parameters.get(i);
+            }
+            return;
+        }
+        for (int i = 0; i < end; i++) {
+            double z = parameters.get(i);
+            double residual = z - (position[i] + velocity[i]);
+            velocity[i] += beta*residual;
+            position[i] = z;
+        }
+    }
+
+    /** Returns true and overwrites the parameters with the prediction, or returns false without history. */
+    public boolean predict(ImageTransformer.Parameters parameters) {
+        if (position == null) {
+            return false;
+        }
+        for (int i = 0; i < position.length; i++) {
+            parameters.set(i, position[i] + velocity[i]);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+
+/**
+ * A stage of the tracking pipeline. Once started, it processes on its own thread
+ * the items submitted to its input ring, and puts the results in its output ring,
+ * where the next stage awaits them. It may also process items synchronously on
+ * the calling thread when it is not started.
+ *
+ * @author Samuel Audet
+ */
+public abstract class PipelineStage<I, O> implements PipelineStageMBean, Runnable {
+    public PipelineStage(String name, int capacity) {
+        this.name = name;
+        this.input  = new SpscRing<I>(capacity);
+        this.output = new SpscRing<O>(capacity);
+    }
+
+    private final String name;
+    private final SpscRing<I> input;
+    private final SpscRing<O> output;
+    private Thread thread = null;
+    private ObjectName objectName = null;
+    private volatile Throwable failure = null;
+    private volatile long processedCount = 0, busyTime = 0;
+
+    private static final Logger logger = Logger.getLogger(PipelineStage.class.getName());
+
+    /** Does the work of this stage, on its thread, or on the caller thread if not started. */
+    public abstract O process(I item) throws Exception;
+
+    public String getName() {
+        return name;
+    }
+    public long getProcessedCount() {
+        return processedCount;
+    }
+    public double getBusyMillis() {
+        return busyTime / 1000000.0;
+    }
+    public int getInputOccupancy() {
+        return input.size();
+    }
+    public int getInputMaxOccupancy() {
+        return input.getMaxOccupancy();
+    }
+    public long getInputStalls() {
+        return input.getConsumerStalls();
+    }
+    public int getOutputOccupancy() {
+        return output.size();
+    }
+    public int getOutputMaxOccupancy() {
+        return output.getMaxOccupancy();
+    }
+    public long getOutputStalls() {
+        return output.getProducerStalls();
+    }
+
+    public boolean isStarted() {
+        return thread != null;
+    }
+
+    public void start() {
+        start(null);
+    }
+
+    /**
+     * Starts the thread, and registers this stage as an MBean with the given pair in
+     * its name, which must identify the pipeline among others running in this JVM.
+     */
+    public synchronized void start(String pair) {
+        if (thread != null) {
+            return;
+        }
+        failure = null;
+        thread = new Thread(this, "ProCamTracker " + (pair != null ? pair + " " : "") + name);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            objectName = new ObjectName("org.bytedeco.procamtracker:type=TrackingPipeline,stage=" + name
+                    + (pair != null ? ",pair=" + ObjectName.quote(pair) : ""));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            logger.warning("Could not register pipeline MBean " + objectName + ", since another stage has its name.");
+            objectName = null;
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not register pipeline MBean for stage " + name + ".", e);
+            objectName = null;
+        }
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        thread.join();
+        thread = null;
+        while (input.poll() != null) { }
+        while (output.poll() != null) { }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Could not unregister pipeline MBean " + objectName + ".", e);
+            }
+            objectName = null;
+        }
+    }
+
+    /** Called by the single producer of this stage to queue an item. */
+    public void submit(I item) throws InterruptedException {
+        input.put(item);
+    }
+
+    /** Called by the single consumer of this stage to get the next result, rethrowing failures. */
+    public O await() throws Exception {
+        while (true) {
+            O result = output.take(1000000);
+            if (result != null) {
+                return result;
+            }
+            Throwable t = failure;
+            if (t instanceof Exception) {
+                throw (Exception)t;
+            } else if (t != null) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                I item = input.take(Long.MAX_VALUE);
+                long startTime = System.nanoTime();
+                O result = process(item);
+                busyTime += System.nanoTime() - startTime;
+                processedCount++;
+                output.put(result);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+/**
+ * The management interface of {@link PipelineStage}.
+ *
+ * @author Samuel Audet
+ */
+public interface PipelineStageMBean {
+    String getName();
+    long getProcessedCount();
+    double getBusyMillis();
+    int getInputOccupancy();
+    int getInputMaxOccupancy();
+    /** How many times the stage had to wait for work. */
+    long getInputStalls();
+    int getOutputOccupancy();
+    int getOutputMaxOccupancy();
+    /** How many times the stage had to wait for its consumer. */
+    long getOutputStalls();
+}
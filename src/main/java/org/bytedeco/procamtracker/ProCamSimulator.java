@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import org.bytedeco.javacv.CameraDevice;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.javacv.ProjectiveDevice;
+import org.bytedeco.javacv.ProjectorDevice;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * A simulated projector-camera system, to run {@link TrackingEngine} without any
+ * hardware. As the {@link TrackingEngine.ProjectorSink}, it receives the distorted
+ * projector images, and as the {@link FrameGrabber}, it returns what a calibrated
+ * camera would see of them projected on a textured plane moving with a known pose:
+ * the reflectance of the texture multiplied by the projector light plus some
+ * ambient light, with Gaussian noise, gamma and lens distortion.
+ * <p>
+ * The motion depends only on the frame number and the noise on the seed, so runs
+ * are reproducible, and the ground truth of the last grabbed frame is available via
+ * {@link #getGroundTruthH()} and {@link #getGroundTruthRoiPts()}. Only the CPU path
+ * of the engine is supported, since with OpenCL images get displayed via OpenGL.
+ *
+ * @author Samuel Audet
+ */
+public class ProCamSimulator extends FrameGrabber implements TrackingEngine.ProjectorSink {
+
+    /**
+     * @param cameraSettings    the calibrated camera to simulate
+     * @param projectorSettings the calibrated projector to simulate
+     * @param textureImageFile  the reflectance of the plane, or null for a checkerboard
+     * @param displayLatency    the number of images shown before one becomes visible, unless
+     *                          waitLatency() gets called, see {@link #getDisplayLatency(int)}
+     * @param frameRate         the frame rate of the simulated camera, which drives the motion
+     * @param gamma             the response gamma of the simulated camera
+     */
+    public ProCamSimulator(CameraDevice.Settings cameraSettings, ProjectorDevice.Settings projectorSettings,
+            File textureImageFile, int displayLatency, double frameRate, double gamma) throws java.lang.Exception {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("The frame rate must be positive: " + frameRate);
+        }
+        // our own devices, since the engine changes the pyramid level of its maps
+        this.cameraDevice = new CameraDevice(cameraSettings);
+        this.projectorDevice = new ProjectorDevice(projectorSettings);
+        this.textureImageFile = textureImageFile;
+        this.displayImages = new IplImage[Math.max(0, displayLatency) + 1];
+        this.imageWidth = cameraDevice.imageWidth;
+        this.imageHeight = cameraDevice.imageHeight;
+        this.frameRate = frameRate;
+        this.gamma = gamma;
+
+        double[] T = projectorDevice.T == null ? null : projectorDevice.T.get();
+        double baseline = T == null ? 0 : Math.sqrt(T[0]*T[0] + T[1]*T[1] + T[2]*T[2]);
+        this.distance = baseline > 0 ? 10*baseline : 1000;
+    }
+
+    /**
+     * Returns the display latency that matches the given projectorBufferingSize of the
+     * engine, which also counts the 3 frames the engine needs to grab, track, and show
+     * an image, as found by {@link LatencyCalibrator}.
+     */
+    public static int getDisplayLatency(int projectorBufferingSize) {
+        return projectorBufferingSize - 3;
+    }
+
+    private CameraDevice cameraDevice;
+    private ProjectorDevice projectorDevice;
+    private File textureImageFile;
+    private OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
+
+    private double gain = 0.8;
+    private double ambientLight = 0.05;
+    private double backgroundReflectance = 0.2;
+    private double noiseSigma = 0.01;
+    private double motionAmplitude = 0.1;
+    private double motionFrequency = 0.2;
+    private double distance;
+    private long seed = 42;
+    private boolean paced = false;
+    private long pacingStartTime = 0;
+
+    private IplImage[] displayImages;
+    private int displayIndex = 0, displayPending = 0;
+
+    private IplImage textureImage, reflectanceImage, lightImage, noiseImage,
+            projectorIdealImage, projectorWarpedImage, idealImage, cameraImage;
+    // kept after stop(), for the ground truth
+    private int textureWidth = 0, textureHeight = 0;
+    private CvMat surfaceH, projectorH, projectorToCameraH;
+    private long[] rng;
+    private double[] groundTruthH = new double[9], groundTruthRoiPts = new double[8],
+            projectorPlaneH = new double[9];
+
+    public double getGain() {
+        return gain;
+    }
+    public void setGain(double gain) {
+        this.gain = gain;
+    }
+
+    public double getAmbientLight() {
+        return ambientLight;
+    }
+    public void setAmbientLight(double ambientLight) {
+        this.ambientLight = ambientLight;
+    }
+
+    public double getBackgroundReflectance() {
+        return backgroundReflectance;
+    }
+    public void setBackgroundReflectance(double backgroundReflectance) {
+        this.backgroundReflectance = backgroundReflectance;
+    }
+
+    public double getNoiseSigma() {
+        return noiseSigma;
+    }
+    public void setNoiseSigma(double noiseSigma) {
+        this.noiseSigma = noiseSigma;
+    }
+
+    /** In radians, the amplitude of the rotations, and relative to the distance, of the translations. */
+    public double getMotionAmplitude() {
+        return motionAmplitude;
+    }
+    public void setMotionAmplitude(double motionAmplitude) {
+        this.motionAmplitude = motionAmplitude;
+    }
+
+    /** In Hz, with respect to the frame rate. */
+    public double getMotionFrequency() {
+        return motionFrequency;
+    }
+    public void setMotionFrequency(double motionFrequency) {
+        this.motionFrequency = motionFrequency;
+    }
+
+    /** From the camera to the plane, in the units of the calibration. */
+    public double getDistance() {
+        return distance;
+    }
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * When set, grab() waits for the time of each frame since the first one, as a
+     * real camera would, instead of returning as soon as the frame is rendered.
+     */
+    public boolean isPaced() {
+        return paced;
+    }
+    public void setPaced(boolean paced) {
+        this.paced = paced;
+    }
+
+    /** The homography from texture pixels to undistorted camera pixels of the last grabbed frame. */
+    public synchronized double[] getGroundTruthH() {
+        return groundTruthH.clone();
+    }
+    /** The corners of the texture in undistorted camera pixels of the last grabbed frame. */
+    public synchronized double[] getGroundTruthRoiPts() {
+        return groundTruthRoiPts.clone();
+    }
+
+    /**
+     * The homography from texture pixels to undistorted camera pixels of any frame,
+     * since the motion depends only on the frame number. Also valid after stop(),
+     * but not before the first start().
+     *
+     * @param frameNumber what getFrameNumber() returned right after grabbing the frame
+     */
+    public synchronized double[] getGroundTruthH(long frameNumber) {
+        double[] H = new double[9];
+        getPlaneH(cameraDevice, (frameNumber - 1) / frameRate, H);
+        return H;
+    }
+
+    @Override public synchronized void start() throws Exception {
+        int w = imageWidth, h = imageHeight;
+        if (textureImageFile != null) {
+            IplImage image = cvLoadImage(textureImageFile.getAbsolutePath());
+            if (image == null) {
+                throw new Exception("Error: Could not load the texture image file \"" + textureImageFile + "\".");
+            }
+            textureImage = IplImage.create(image.width(), image.height(), IPL_DEPTH_32F, 3);
+            cvConvertScale(image, textureImage, 1.0/255, 0);
+            image.release();
+        } else {
+            IplImage image = IplImage.create(640, 480, IPL_DEPTH_8U, 3);
+            cvSetZero(image);
+            for (int y = 0; y < 480; y += 40) {
+                for (int x = (y/40)%2 * 40; x < 640; x += 80) {
+                    cvRectangle(image, cvPoint(x, y), cvPoint(x + 39, y + 39), CvScalar.WHITE, CV_FILLED, 8, 0);
+                }
+            }
+            textureImage = IplImage.create(640, 480, IPL_DEPTH_32F, 3);
+            cvConvertScale(image, textureImage, 1.0/255, 0);
+            image.release();
+        }
+        // textures are gamma encoded, but reflectance is linear
+        cvPow(textureImage, textureImage, 2.2);
+        textureWidth = textureImage.width();
+        textureHeight = textureImage.height();
+
+        reflectanceImage = IplImage.create(w, h, IPL_DEPTH_32F, 3);
+        lightImage       = IplImage.create(w, h, IPL_DEPTH_32F, 3);
+        noiseImage       = IplImage.create(w, h, IPL_DEPTH_32F, 3);
+        projectorWarpedImage = IplImage.create(w, h, IPL_DEPTH_8U, 3);
+        idealImage       = IplImage.create(w, h, IPL_DEPTH_8U, 3);
+        cameraImage      = IplImage.create(w, h, IPL_DEPTH_8U, 3);
+        projectorIdealImage = IplImage.create(projectorDevice.imageWidth,
+                projectorDevice.imageHeight, IPL_DEPTH_8U, 3);
+        surfaceH   = CvMat.create(3, 3);
+        projectorH = CvMat.create(3, 3);
+        projectorToCameraH = CvMat.create(3, 3);
+        rng = new long[] { cvRNG(seed) };
+        frameNumber = 0;
+        timestamp = 0;
+    }
+
+    @Override public synchronized void stop() throws Exception {
+        IplImage[] images = { textureImage, reflectanceImage, lightImage, noiseImage,
+                projectorIdealImage, projectorWarpedImage, idealImage, cameraImage };
+        for (IplImage image : images) {
+            if (image != null) {
+                image.release();
+            }
+        }
+        for (int i = 0; i < displayImages.length; i++) {
+            if (displayImages[i] != null) {
+                displayImages[i].release();
+                displayImages[i] = null;
+            }
+        }
+        textureImage = reflectanceImage = lightImage = noiseImage = null;
+        projectorIdealImage = projectorWarpedImage = idealImage = cameraImage = null;
+        surfaceH = projectorH = projectorToCameraH = null;
+    }
+
+    @Override public void trigger() throws Exception { }
+
+    @Override public synchronized Frame grab() throws Exception {
+        if (paced) {
+            if (frameNumber == 0) {
+                pacingStartTime = System.nanoTime();
+            }
+            // wait() lets showImage() go on meanwhile
+            long due = pacingStartTime + Math.round(1000000000.0 * frameNumber / frameRate);
+            long remaining;
+            try {
+                while ((remaining = due - System.nanoTime()) > 0) {
+                    wait(remaining / 1000000, (int)(remaining % 1000000));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Exception("Interrupted while waiting for frame " + frameNumber + ".", e);
+            }
+        }
+        double t = frameNumber / frameRate;
+        updatePose(t);
+
+        // the light reaching the plane, from the projector and the environment
+        IplImage displayImage = displayImages[(displayIndex - displayPending + displayImages.length) % displayImages.length];
+        if (displayImage == null) {
+            cvSet(lightImage, cvScalarAll(ambientLight));
+        } else {
+            projectorDevice.undistort(displayImage, projectorIdealImage);
+            cvInvert(projectorH, projectorToCameraH);
+            cvMatMul(surfaceH, projectorToCameraH, projectorToCameraH);
+            cvWarpPerspective(projectorIdealImage, projectorWarpedImage, projectorToCameraH,
+                    CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, cvScalarAll(0));
+            cvConvertScale(projectorWarpedImage, lightImage, gain/255, ambientLight);
+        }
+
+        // reflected by the plane, and sensed by the camera
+        cvWarpPerspective(textureImage, reflectanceImage, surfaceH,
+                CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, cvScalarAll(backgroundReflectance));
+        cvMul(reflectanceImage, lightImage, lightImage, 1);
+        if (noiseSigma > 0) {
+            cvRandArr(rng, noiseImage, CV_RAND_NORMAL, cvScalarAll(0), cvScalarAll(noiseSigma));
+            cvAdd(lightImage, noiseImage, lightImage, null);
+        }
+        cvMaxS(lightImage, 0, lightImage);
+        cvMinS(lightImage, 1, lightImage);
+        if (gamma != 1.0) {
+            cvPow(lightImage, lightImage, 1/gamma);
+        }
+        cvConvertScale(lightImage, idealImage, 255, 0);
+        cameraDevice.distort(idealImage, cameraImage);
+
+        timestamp = Math.round(1000000 * t);
+        frameNumber++;
+        Frame frame = converter.convert(cameraImage);
+        frame.timestamp = timestamp;
+        return frame;
+    }
+
+    @Override public void release() throws Exception {
+        stop();
+    }
+
+    /** Called by the engine with the distorted image to display, which may have an ROI set. */
+    public synchronized void showImage(IplImage image) {
+        int next = (displayIndex + 1) % displayImages.length;
+        if (displayImages[next] == null) {
+            displayImages[next] = IplImage.create(image.width(), image.height(), IPL_DEPTH_8U, 3);
+            cvSetZero(displayImages[next]);
+        }
+        IplROI roi = image.roi();
+        if (roi != null) {
+            // only the ROI changes, as with the other ProjectorSink
+            if (next != displayIndex && displayImages[displayIndex] != null) {
+                cvCopy(displayImages[displayIndex], displayImages[next]);
+            }
+            cvSetImageROI(displayImages[next], cvRect(roi.xOffset(), roi.yOffset(), roi.width(), roi.height()));
+        }
+        if (image.nChannels() == 4) {
+            cvCvtColor(image, displayImages[next], CV_RGBA2BGR);
+        } else {
+            cvCopy(image, displayImages[next]);
+        }
+        cvResetImageROI(displayImages[next]);
+        displayIndex = next;
+        displayPending = Math.min(displayPending + 1, displayImages.length - 1);
+    }
+
+    /** Makes visible the last image shown, as if we had waited for the latency of the projector. */
+    public synchronized void waitLatency() {
+        displayPending = 0;
+    }
+
+    public void dispose() { }
+
+    /** Moves the plane smoothly around its initial fronto-parallel pose at the given distance. */
+    private void updatePose(double t) {
+        getPlaneH(cameraDevice, t, groundTruthH);
+        surfaceH.put(groundTruthH);
+        getPlaneH(projectorDevice, t, projectorPlaneH);
+        projectorH.put(projectorPlaneH);
+
+        double[] H = groundTruthH;
+        int tw = textureWidth, th = textureHeight;
+        double[] pts = { 0.0, 0.0,  tw, 0.0,  tw, th,  0.0, th };
+        for (int i = 0; i < 4; i++) {
+            double x = pts[2*i], y = pts[2*i + 1];
+            double w = H[6]*x + H[7]*y + H[8];
+            groundTruthRoiPts[2*i    ] = (H[0]*x + H[1]*y + H[2])/w;
+            groundTruthRoiPts[2*i + 1] = (H[3]*x + H[4]*y + H[5])/w;
+        }
+    }
+
+    /** Puts in H the homography from texture pixels to the pixels of the device at time t. */
+    private void getPlaneH(ProjectiveDevice device, double t, double[] H) {
+        double a = 2*Math.PI*motionFrequency*t;
+        double ax = motionAmplitude*Math.sin(a);
+        double ay = motionAmplitude*Math.sin(0.7*a + 1);
+        double cx = Math.cos(ax), sx = Math.sin(ax);
+        double cy = Math.cos(ay), sy = Math.sin(ay);
+        // R = Rx(ax) * Ry(ay), columns r1 and r2 span the plane
+        double[] r1 = { cy, sx*sy, -cx*sy };
+        double[] r2 = { 0,  cx,     sx    };
+        double[] p0 = { 0.5*motionAmplitude*distance*Math.sin(1.3*a),
+                        0.5*motionAmplitude*distance*Math.sin(0.9*a + 2),
+                        distance };
+
+        // the texture covers 1.5 times the field of view of the camera at the initial distance
+        double fx = cameraDevice.cameraMatrix.get(0);
+        int tw = textureWidth, th = textureHeight;
+        double s = 1.5*distance*imageWidth/fx / tw;
+        double[] c1 = { r1[0]*s, r1[1]*s, r1[2]*s };
+        double[] c2 = { r2[0]*s, r2[1]*s, r2[2]*s };
+        double[] c3 = { p0[0] - c1[0]*tw/2 - c2[0]*th/2,
+                        p0[1] - c1[1]*tw/2 - c2[1]*th/2,
+                        p0[2] - c1[2]*tw/2 - c2[2]*th/2 };
+        getPlaneH(device, c1, c2, c3, H);
+    }
+
+    /** H = K [R c1, R c2, R c3 + T], the homography from the plane to the device. */
+    private static void getPlaneH(ProjectiveDevice device, double[] c1, double[] c2, double[] c3, double[] H) {
+        double[] R = device.R == null ? new double[] { 1, 0, 0,  0, 1, 0,  0, 0, 1 } : device.R.get();
+        double[] T = device.T == null ? new double[] { 0, 0, 0 } : device.T.get();
+        double[] K = device.cameraMatrix.get();
+        double[] M = new double[9];
+        for (int i = 0; i < 3; i++) {
+            M[3*i    ] = R[3*i]*c1[0] + R[3*i + 1]*c1[1] + R[3*i + 2]*c1[2];
+            M[3*i + 1] = R[3*i]*c2[0] + R[3*i + 1]*c2[1] + R[3*i + 2]*c2[2];
+            M[3*i + 2] = R[3*i]*c3[0] + R[3*i + 1]*c3[1] + R[3*i + 2]*c3[2] + T[i];
+        }
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                H[3*i + j] = K[3*i]*M[j] + K[3*i + 1]*M[3 + j] + K[3*i + 2]*M[6 + j];
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.nio.FloatBuffer;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Distorts projector images on the CPU, like ProjectorDevice.distort(), but only
+ * within the region of the distorted image that depends on a given rectangle of the
+ * undistorted image. To find that region quickly, it precomputes for each tile of
+ * the distorted image the bounding box of the pixels it reads in the undistorted one.
+ *
+ * @author Samuel Audet
+ */
+class ProjectorRemapper {
+    /** @param map1 the distortion maps, in any format cvRemap() accepts */
+    ProjectorRemapper(IplImage map1, IplImage map2, int tileSize) {
+        this.map1 = map1.clone();
+        this.map2 = map2 == null ? null : map2.clone();
+        this.tileSize = tileSize;
+        width = map1.width();
+        height = map1.height();
+        tilesX = (width  + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+        minX = new int[tilesX*tilesY];
+        minY = new int[tilesX*tilesY];
+        maxX = new int[tilesX*tilesY];
+        maxY = new int[tilesX*tilesY];
+
+        IplImage mapx = IplImage.create(width, height, IPL_DEPTH_32F, 1);
+        IplImage mapy = IplImage.create(width, height, IPL_DEPTH_32F, 1);
+        if (map1.depth() == IPL_DEPTH_32F && map1.nChannels() == 1) {
+            cvCopy(map1, mapx);
+            cvCopy(map2, mapy);
+        } else {
+            cvConvertMaps(map1, map2, mapx, mapy);
+        }
+        FloatBuffer mx = mapx.getFloatBuffer(), my = mapy.getFloatBuffer();
+        int step = mapx.widthStep()/4;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+                for (int y = ty*tileSize; y < Math.min(height, (ty+1)*tileSize); y++) {
+                    for (int x = tx*tileSize; x < Math.min(width, (tx+1)*tileSize); x++) {
+                        float sx = mx.get(y*step + x), sy = my.get(y*step + x);
+                        x0 = Math.min(x0, sx); x1 = Math.max(x1, sx);
+                        y0 = Math.min(y0, sy); y1 = Math.max(y1, sy);
+                    }
+                }
+                // bilinear interpolation reads one more pixel on each side
+                int t = ty*tilesX + tx;
+                minX[t] = (int)Math.floor(x0) - 1;
+                minY[t] = (int)Math.floor(y0) - 1;
+                maxX[t] = (int)Math.ceil(x1) + 1;
+                maxY[t] = (int)Math.ceil(y1) + 1;
+            }
+        }
+        mapx.release();
+        mapy.release();
+    }
+
+    private final IplImage map1, map2;
+    private final int width, height, tileSize, tilesX, tilesY;
+    private final int[] minX, minY, maxX, maxY;
+
+    /**
+     * Sets dst to the bounding box of the tiles of the distorted image that read
+     * pixels within src, a rectangle of the undistorted image, or to an empty
+     * rectangle if none do.
+     */
+    public CvRect map(CvRect src, CvRect dst) {
+        int sx0 = src.x(), sy0 = src.y(), sx1 = src.x() + src.width(), sy1 = src.y() + src.height();
+        int tx0 = tilesX, ty0 = tilesY, tx1 = -1, ty1 = -1;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int t = ty*tilesX + tx;
+                if (minX[t] < sx1 && maxX[t] >= sx0 && minY[t] < sy1 && maxY[t] >= sy0) {
+                    tx0 = Math.min(tx0, tx); tx1 = Math.max(tx1, tx);
+                    ty0 = Math.min(ty0, ty); ty1 = Math.max(ty1, ty);
+                }
+            }
+        }
+        if (tx1 < 0) {
+            return dst.x(0).y(0).width(0).height(0);
+        }
+        int x = tx0*tileSize, y = ty0*tileSize;
+        return dst.x(x).y(y).width(Math.min(width, (tx1+1)*tileSize) - x)
+                              .height(Math.min(height, (ty1+1)*tileSize) - y);
+    }
+
+    /** Distorts src into dst within roi of dst, or everywhere if null, ignoring their own ROIs. */
+    public void distort(IplImage src, IplImage dst, CvRect roi) {
+        if (roi != null && (roi.width() <= 0 || roi.height() <= 0)) {
+            return;
+        }
+        cvResetImageROI(src);
+        if (roi != null) {
+            cvSetImageROI(map1, roi);
+            if (map2 != null) {
+                cvSetImageROI(map2, roi);
+            }
+            cvSetImageROI(dst, roi);
+        } else {
+            cvResetImageROI(dst);
+        }
+        cvRemap(src, dst, map1, map2, CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, CvScalar.ZERO);
+        cvResetImageROI(map1);
+        if (map2 != null) {
+            cvResetImageROI(map2);
+        }
+        cvResetImageROI(dst);
+    }
+
+    public void release() {
+        map1.release();
+        if (map2 != null) {
+            map2.release();
+        }
+    }
+}
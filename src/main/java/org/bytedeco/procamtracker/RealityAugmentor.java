@@ -41,10 +41,6 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
@@ -316,6 +312,24 @@ public class RealityAugmentor {
     private MarkerDetector.Settings markerDetectorSettings;
     private VirtualBall   .Settings virtualBallSettings;
 
+    private SharedAssets sharedAssets = null;
+    public SharedAssets getSharedAssets() {
+        return sharedAssets;
+    }
+    /** Loads image files only once for all users of the same assets, which must then not modify them. */
+    public void setSharedAssets(SharedAssets sharedAssets) {
+        this.sharedAssets = sharedAssets;
+    }
+
+    private String pairName = null;
+    public String getPairName() {
+        return pairName;
+    }
+    /** Identifies the update stage of this augmentor in its MBean name, see {@link PipelineStage#start(String)}. */
+    public void setPairName(String pairName) {
+        this.pairName = pairName;
+    }
+
     private ProjectiveDevice camera, projector;
     private int channels;
 
@@ -327,6 +341,7 @@ public class RealityAugmentor {
     private FrameGrabber videoToProject = null;
     private OpenCVFrameConverter.ToIplImage videoConverter = new OpenCVFrameConverter.ToIplImage();
     private IplImage imageToProject = null, textureImage = null;
+    private boolean imageToProjectShared = false;
     private Chronometer chronometer = null;
     private VirtualBall virtualBall = null;
 
@@ -334,6 +349,8 @@ public class RealityAugmentor {
     private ProjectiveTransformer.Parameters[] composeParameters = { composeWarper.createParameters() };
     //private ProjectiveTransformer.Data[] composeData = { new ProjectiveTransformer.Data() };
     private CvMat srcPts = CvMat.create(4, 1, CV_64F, 2), dstPts = CvMat.create(4, 1, CV_64F, 2);
+    // used only by drawRoi(), which may run on another thread than update()
+    private CvMat drawPts = CvMat.create(4, 1, CV_64F, 2);
     private CvMat tempH  = CvMat.create(3, 3);
     private CvPoint tempPts = new CvPoint(4), corners = new CvPoint(4), corners2 = new CvPoint(corners);
     private IntPointer tempNPts = new IntPointer(1).put(4);
@@ -346,8 +363,33 @@ public class RealityAugmentor {
 
     private static final Logger logger = Logger.getLogger(RealityAugmentor.class.getName());
 
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
-    private Future<CvRect> future = null;
+    private double[] pts = new double[8], projPts = new double[8], framePts = new double[8],
+            dstPtsData = new double[8];
+    private volatile long updateTime = 0;
+
+    /** The arguments and result of an update, the same instance being reused for all frames. */
+    private static class UpdateTask {
+        IplImage projectorImage;
+        CvRect prevroi;
+        double imageMouseX, imageMouseY;
+        boolean mouseClick;
+        ProCamTransformer.Parameters parameters;
+        CvRect result;
+    }
+    private final UpdateTask updateTask = new UpdateTask();
+    private volatile boolean updatePending = false;
+    private final PipelineStage<UpdateTask, UpdateTask> updateStage =
+            new PipelineStage<UpdateTask, UpdateTask>("augmentor", 1) {
+    public UpdateTask process(UpdateTask t) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            t.result = doUpdate(t.projectorImage, t.prevroi, t.imageMouseX,
+                    t.imageMouseY, t.mouseClick, t.parameters);
+        } finally {
+            updateTime = System.nanoTime() - startTime;
+        }
+        return t;
+    }};
 
     public void initVirtualSettings() throws Exception {
         desktopScreen = null;
@@ -355,6 +397,7 @@ public class RealityAugmentor {
         handMouseCursor = null;
         videoToProject = null;
         imageToProject = null;
+        imageToProjectShared = false;
         chronometer = null;
         virtualBall = null;
 
@@ -399,41 +442,47 @@ public class RealityAugmentor {
             handMouseCursor = ImageIO.read(getClass().getResource("icons/Choose.png"));
         } else if (virtualSettings.projectorVideoFile != null) {
             if (virtualSettings.projectorImageFile != null) {
-                OpenCVFrameConverter.ToIplImage converter1 = new OpenCVFrameConverter.ToIplImage();
-                Java2DFrameConverter converter2 = new Java2DFrameConverter();
-                // loads alpha channel
-                imageToProject = converter1.convert(converter2.getFrame(ImageIO.read(virtualSettings.projectorImageFile), 1.0, true));
-                if (imageToProject == null) {
-                    throw new Exception("Error: Could not load projectorImageFile named \"" +
-                            virtualSettings.projectorImageFile + "\".");
-                }
-//                imageToProject.applyGamma(2.2);
-                final ByteBuffer buf = imageToProject.getByteBuffer();
-                final int width = imageToProject.width();
-                final int height = imageToProject.height();
-                final int step = imageToProject.widthStep();
-                final int channels = imageToProject.nChannels();
-//                int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE,
-//                    minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
-                for (int y = 0; y < height; y++) {
-                    int pixel = y*step;
-                    for (int x = 0; x < width; x++, pixel += channels) {
-                        switch (channels) {
-                            default: assert false;
-                            case 4: // RGBA
-//                                if (buf.get(pixel + 3) != 0) {
-//                                    minX = Math.min(minX, x); maxX = Math.max(maxX, x);
-//                                    minY = Math.min(minY, y); maxY = Math.max(maxY, y);
-//                                }
-                            case 3: buf.put(pixel + 2, (byte)Java2DFrameConverter.decodeGamma22(buf.get(pixel + 2)));
-                            case 2: buf.put(pixel + 1, (byte)Java2DFrameConverter.decodeGamma22(buf.get(pixel + 1)));
-                            case 1: buf.put(pixel + 0, (byte)Java2DFrameConverter.decodeGamma22(buf.get(pixel + 0)));
+                final File file = virtualSettings.projectorImageFile;
+                imageToProject = loadImage(SharedAssets.key("alpha", file, channels), new SharedAssets.Loader() {
+                public IplImage load() throws Exception {
+                    OpenCVFrameConverter.ToIplImage converter1 = new OpenCVFrameConverter.ToIplImage();
+                    Java2DFrameConverter converter2 = new Java2DFrameConverter();
+                    // loads alpha channel
+                    IplImage imageToProject = converter1.convert(converter2.getFrame(ImageIO.read(file), 1.0, true));
+                    if (imageToProject == null) {
+                        throw new Exception("Error: Could not load projectorImageFile named \"" + file + "\".");
+                    }
+                    // copy out of the converter
+                    imageToProject = imageToProject.clone();
+//                    imageToProject.applyGamma(2.2);
+                    final ByteBuffer buf = imageToProject.getByteBuffer();
+                    final int width = imageToProject.width();
+                    final int height = imageToProject.height();
+                    final int step = imageToProject.widthStep();
+                    final int channels = imageToProject.nChannels();
+//                    int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE,
+//                        minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+                    for (int y = 0; y < height; y++) {
+                        int pixel = y*step;
+                        for (int x = 0; x < width; x++, pixel += channels) {
+                            switch (channels) {
+                                default: assert false;
+                                case 4: // RGBA
+//                                    if (buf.get(pixel + 3) != 0) {
+//                                        minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+//                                        minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+//                                    }
+                                case 3: buf.put(pixel + 2, (byte)Java2DFrameConverter.decodeGamma22(buf.get(pixel + 2)));
+                                case 2: buf.put(pixel + 1, (byte)Java2DFrameConverter.decodeGamma22(buf.get(pixel + 1)));
+                                case 1: buf.put(pixel + 0, (byte)Java2DFrameConverter.decodeGamma22(buf.get(pixel + 0)));
+                            }
                         }
                     }
-                }
-//                if (maxX > minX && maxY > minY) {
-//                    cvSetImageROI(imageToProject, cvRect(minX, minY, maxX-minX, maxY-minY));
-//                }
+//                    if (maxX > minX && maxY > minY) {
+//                        cvSetImageROI(imageToProject, cvRect(minX, minY, maxX-minX, maxY-minY));
+//                    }
+                    return imageToProject;
+                }});
             }
             try {
                 videoToProject = new FFmpegFrameGrabber(virtualSettings.projectorVideoFile);
@@ -455,35 +504,61 @@ public class RealityAugmentor {
                 videoToProject.start();
             }
         } else if (virtualSettings.projectorImageFile != null) {
-            // does not load alpha channel
-            imageToProject = channels == 4 ? 
-                    cvLoadImageRGBA(virtualSettings.projectorImageFile.getAbsolutePath()) :
-                    cvLoadImage    (virtualSettings.projectorImageFile.getAbsolutePath(),
-                            channels == 3 ? IMREAD_COLOR : IMREAD_GRAYSCALE);
-            if (imageToProject == null) {
-                throw new Exception("Error: Could not load projectorImageFile named \"" + 
-                        virtualSettings.projectorImageFile + "\".");
-            }
-            Buffer buffer = imageToProject.createBuffer();
-            int depth = OpenCVFrameConverter.getFrameDepth(imageToProject.depth());
-            int stride = imageToProject.widthStep() * 8 / Math.abs(depth);
-            Java2DFrameConverter.applyGamma(buffer, depth, stride, 2.2);
+            final File file = virtualSettings.projectorImageFile;
+            imageToProject = loadImage(SharedAssets.key("linear", file, channels), new SharedAssets.Loader() {
+            public IplImage load() throws Exception {
+                // does not load alpha channel
+                IplImage imageToProject = channels == 4 ?
+                        cvLoadImageRGBA(file.getAbsolutePath()) :
+                        cvLoadImage    (file.getAbsolutePath(),
+                                channels == 3 ? IMREAD_COLOR : IMREAD_GRAYSCALE);
+                if (imageToProject == null) {
+                    throw new Exception("Error: Could not load projectorImageFile named \"" + file + "\".");
+                }
+                Buffer buffer = imageToProject.createBuffer();
+                int depth = OpenCVFrameConverter.getFrameDepth(imageToProject.depth());
+                int stride = imageToProject.widthStep() * 8 / Math.abs(depth);
+                Java2DFrameConverter.applyGamma(buffer, depth, stride, 2.2);
+                return imageToProject;
+            }});
+        }
+    }
+
+    /** Loads the image via sharedAssets if set, in which case imageToProject must not get modified. */
+    private IplImage loadImage(String key, SharedAssets.Loader loader) throws Exception {
+        if (sharedAssets != null) {
+            imageToProjectShared = true;
+            return sharedAssets.get(key, loader);
+        } else {
+            return loader.load();
         }
     }
 
     public double[] acquireRoi(CanvasFrame monitorWindow, double monitorWindowScale,
             IplImage cameraImage, int pyramidLevel) throws Exception {
+        return acquireRoi(monitorWindow, monitorWindowScale, cameraImage, pyramidLevel, settings.toArray());
+    }
+
+    /** Acquires the ROI of the given object only, to track several objects with one RealityAugmentor each. */
+    public double[] acquireRoi(CanvasFrame monitorWindow, double monitorWindowScale,
+            IplImage cameraImage, int pyramidLevel, ObjectSettings objectSettings) throws Exception {
+        return acquireRoi(monitorWindow, monitorWindowScale, cameraImage, pyramidLevel,
+                new ObjectSettings[] { objectSettings });
+    }
+
+    private double[] acquireRoi(CanvasFrame monitorWindow, double monitorWindowScale,
+            IplImage cameraImage, int pyramidLevel, ObjectSettings[] objects) throws Exception {
         final int w = cameraImage.width();
         final int h = cameraImage.height();
         roiPts = null;
         markerError      = 0;
         markerErrorCount = 0;
 
-        for (ObjectSettings os : settings.toArray()) {
+        for (ObjectSettings os : objects) {
             File f = os.textureImageFile;
             RoiAcquisitionMethod ram = os.roiAcquisitionMethod;
             if ((ram == RoiAcquisitionMethod.OBJECT_FINDER || ram == RoiAcquisitionMethod.MARKER_DETECTOR) &&
-                    (f == null || (textureImage = cvLoadImage(f.getAbsolutePath())) == null)) {
+                    (f == null || (textureImage = loadTexture(f)) == null)) {
                 throw new Exception("Error: Could not load the object image file \"" + f + "\" for " + ram + ".");
             }
             // in the grabbed camera images, acquire the region of interest
@@ -505,15 +580,7 @@ public class RealityAugmentor {
                         roiPts[i] = roiPts[i]*(1<<pyramidLevel);
                     }
                 }
-                objectSettings = os;
-                virtualSettings = null;
-                for (VirtualSettings vs : objectSettings.toArray()) {
-                    Rectangle r = vs.objectHotSpot;
-                    if (r == null || r.width <= 0 || r.height <= 0) {
-                        setVirtualSettings(vs);
-                        initVirtualSettings();
-                    }
-                }
+                selectObject(os);
                 break;
             }
         }
@@ -521,6 +588,92 @@ public class RealityAugmentor {
         return roiPts;
     }
 
+    private IplImage loadTexture(final File f) throws Exception {
+        SharedAssets.Loader loader = new SharedAssets.Loader() {
+            public IplImage load() {
+                return cvLoadImage(f.getAbsolutePath());
+            }
+        };
+        return sharedAssets != null ? sharedAssets.get(SharedAssets.key("texture", f, 3), loader) : loader.load();
+    }
+
+    /**
+     * Selects again the object and ROI from a previous call to {@link #acquireRoi}, for example
+     * saved to a file. Also reloads the texture image, and for {@link RoiAcquisitionMethod#MARKER_DETECTOR},
+     * maps the markers of the texture onto the ROI to measure the error against them as before.
+     *
+     * @return roiPts, or null if the object or its markers could not be restored
+     */
+    public double[] restoreRoi(int objectIndex, double[] roiPts) throws Exception {
+        ObjectSettings[] objects = settings.toArray();
+        if (objectIndex < 0 || objectIndex >= objects.length || roiPts == null || roiPts.length != 8) {
+            return null;
+        }
+        ObjectSettings os = objects[objectIndex];
+        File f = os.textureImageFile;
+        RoiAcquisitionMethod ram = os.roiAcquisitionMethod;
+        IplImage texture = null;
+        if (ram == RoiAcquisitionMethod.OBJECT_FINDER || ram == RoiAcquisitionMethod.MARKER_DETECTOR) {
+            if (f == null || (texture = loadTexture(f)) == null) {
+                return null;
+            }
+        }
+        MarkerDetector detector = null;
+        if (ram == RoiAcquisitionMethod.MARKER_DETECTOR) {
+            detector = new MarkerDetector(markerDetectorSettings);
+            Marker[] markers = detector.detect(texture, false);
+            if (markers == null || markers.length == 0) {
+                return null;
+            }
+            // the ROI covers the whole texture, so its corners give the warp of the markers
+            double w = texture.width(), h = texture.height();
+            JavaCV.getPerspectiveTransform(new double[] { 0.0, 0.0,  w, 0.0,  w, h,  0.0, h }, roiPts, tempH);
+            for (int i = 0; i < 4; i++) {
+                for (Marker m : markers) {
+                    if (m.id == i) {
+                        double[] c = m.getCenter();
+                        srcPts.put(i*2  , c[0]);
+                        srcPts.put(i*2+1, c[1]);
+                        break;
+                    }
+                }
+            }
+            cvPerspectiveTransform(srcPts, srcPts, tempH);
+        }
+        if (texture != null) {
+            textureImage = texture;
+        }
+        this.roiPts = roiPts;
+        markerError      = 0;
+        markerErrorCount = 0;
+        markerDetector   = detector;
+        selectObject(os);
+        return roiPts;
+    }
+
+    /** Returns the index in the settings of the object selected by the last call to {@link #acquireRoi}, or -1. */
+    public int getObjectIndex() {
+        ObjectSettings[] objects = settings.toArray();
+        for (int i = 0; i < objects.length; i++) {
+            if (objects[i] == objectSettings) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void selectObject(ObjectSettings os) throws Exception {
+        objectSettings = os;
+        virtualSettings = null;
+        for (VirtualSettings vs : objectSettings.toArray()) {
+            Rectangle r = vs.objectHotSpot;
+            if (r == null || r.width <= 0 || r.height <= 0) {
+                setVirtualSettings(vs);
+                initVirtualSettings();
+            }
+        }
+    }
+
     private double[] acquireRoiFromMouseClicks(final CanvasFrame monitorWindow,
             final double monitorWindowScale) throws Exception {
         if (monitorWindow == null) {
@@ -715,10 +868,6 @@ public class RealityAugmentor {
                 }}});
  */
             } else {
-                final int dstStep = imageToProject.widthStep();
-                final int dstChannels = imageToProject.nChannels();
-                final ByteBuffer dstBuf = imageToProject.getByteBuffer();
-                final IntBuffer dstBufInt = dstChannels == 4 ? dstBuf.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
                 final int dstWidth = imageToProject.width();
                 final int dstHeight = imageToProject.height();
 
@@ -732,39 +881,9 @@ public class RealityAugmentor {
     //                int y = l.y - p.y;
                     g.drawImage(handMouseCursor, desktopMouseX, desktopMouseY, null);
                 }
-                final int srcStep = ((SinglePixelPackedSampleModel)screenCapture.getSampleModel()).getScanlineStride();
-                final int[] srcData = ((DataBufferInt)screenCapture.getRaster().getDataBuffer()).getData();
-
-    //            for (int y = 0; y < dstHeight; y++) {
-                Parallel.loop(0, dstHeight, new Parallel.Looper() {
-                public void loop(int from, int to, int looperID) {
-                for (int y = from; y < to; y++) {
-                    int srcPixel = y*srcStep;
-                    int dstPixel = y*dstStep;
-                    for (int x = 0; x < dstWidth; x++, srcPixel++, dstPixel += dstChannels) {
-                        int rgb = srcData[srcPixel];
-                        switch (dstChannels) {
-                            case 1:
-                                int lumi = (Java2DFrameConverter.decodeGamma22((rgb >> 16) & 0xFF) +
-                                            Java2DFrameConverter.decodeGamma22((rgb >>  8) & 0xFF) +
-                                            Java2DFrameConverter.decodeGamma22((rgb      ) & 0xFF)) / 3;
-                                dstBuf.put(dstPixel, (byte)lumi);
-                                break;
-                            case 3: // BGR
-                                dstBuf.put(dstPixel + 0, (byte)Java2DFrameConverter.decodeGamma22((rgb      ) & 0xFF));
-                                dstBuf.put(dstPixel + 1, (byte)Java2DFrameConverter.decodeGamma22((rgb >>  8) & 0xFF));
-                                dstBuf.put(dstPixel + 2, (byte)Java2DFrameConverter.decodeGamma22((rgb >> 16) & 0xFF));
-                                break;
-                            case 4: // RGBA
-                                int rgba = (Java2DFrameConverter.decodeGamma22((rgb >> 16) & 0xFF)      ) |
-                                           (Java2DFrameConverter.decodeGamma22((rgb >>  8) & 0xFF) <<  8) |
-                                           (Java2DFrameConverter.decodeGamma22((rgb      ) & 0xFF) << 16) | (0xFF << 24);
-                                dstBufInt.put(dstPixel/4, rgba);
-                                break;
-                            default: assert false;
-                        }
-                    }
-                }}});
+                int srcStep = ((SinglePixelPackedSampleModel)screenCapture.getSampleModel()).getScanlineStride();
+                int[] srcData = ((DataBufferInt)screenCapture.getRaster().getDataBuffer()).getData();
+                copyScreenCapture(srcData, srcStep, imageToProject);
             }
         } else if (videoToProject != null) {
             frameImage = videoConverter.convert(videoToProject.grab());
@@ -776,75 +895,7 @@ public class RealityAugmentor {
 //                frameImage.applyGamma(2.2);
             } else {
                 // merge images with alpha blending...
-                int w  = Math.min(imageToProject.width(),  frameImage.width());
-                int h  = Math.min(imageToProject.height(), frameImage.height());
-                IplROI srcRoi   = imageToProject.roi();
-                final int srcStep     = imageToProject.widthStep(), dstStep     = frameImage.widthStep();
-                final int srcChannels = imageToProject.nChannels(), dstChannels = frameImage.nChannels();
-                int srcIndex = 0, dstIndex = 0;
-                if (srcRoi != null) {
-                    srcIndex = srcRoi.yOffset()*srcStep + srcRoi.xOffset()*srcChannels;
-                    dstIndex = srcRoi.yOffset()*dstStep + srcRoi.xOffset()*dstChannels;
-                    w = srcRoi.width();
-                    h = srcRoi.height();
-                }
-                final ByteBuffer srcBuf = imageToProject.getByteBuffer(srcIndex);
-                final ByteBuffer dstBuf = frameImage    .getByteBuffer(dstIndex);
-                final IntBuffer srcBufInt = srcChannels == 4 ? srcBuf.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
-                final IntBuffer dstBufInt = dstChannels == 4 ? dstBuf.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
-                final int width  = w;
-                final int height = h;
-
-//                for (int y = 0; y < height; y++) {
-                Parallel.loop(0, height, new Parallel.Looper() {
-                public void loop(int from, int to, int looperID) {
-                for (int y = from; y < to; y++) {
-                    int srcPixel = y*srcStep;
-                    int dstPixel = y*dstStep;
-                    for (int x = 0; x < width; x++, srcPixel += srcChannels, dstPixel += dstChannels) {
-                        int r = 0, g = 0, b = 0, a = 128;
-                        switch (srcChannels) {
-                            case 1:
-                                r = g = b = srcBuf.get(srcPixel) & 0xFF;
-                                break;
-                            case 3: // BGR
-                                b = srcBuf.get(srcPixel    ) & 0xFF;
-                                g = srcBuf.get(srcPixel + 1) & 0xFF;
-                                r = srcBuf.get(srcPixel + 2) & 0xFF;
-                                break;
-                            case 4: // RGBA
-                                int rgba = srcBufInt.get(srcPixel/4);
-                                r = (rgba      ) & 0xFF;
-                                g = (rgba >>  8) & 0xFF;
-                                b = (rgba >> 16) & 0xFF;
-                                a = (rgba >> 24) & 0xFF;
-                                break;
-                            default: assert false;
-                        }
-
-                        switch (dstChannels) {
-                            case 1:
-                                int lumi = (r + g + b)/3;
-                                dstBuf.put(dstPixel,  (byte)((lumi*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel    ))*(255-a))/255));
-                                break;
-                            case 3: // BGR
-                                dstBuf.put(dstPixel,     (byte)((b*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel    ))*(255-a))/255));
-                                dstBuf.put(dstPixel + 1, (byte)((g*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel + 1))*(255-a))/255));
-                                dstBuf.put(dstPixel + 2, (byte)((r*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel + 2))*(255-a))/255));
-                                break;
-                            case 4: // RGBA
-                                int rgba = dstBufInt.get(dstPixel/4);
-                                r = (r*a + Java2DFrameConverter.decodeGamma22((rgba      ) & 0xFF)*(255-a))/255;
-                                g = (g*a + Java2DFrameConverter.decodeGamma22((rgba >>  8) & 0xFF)*(255-a))/255;
-                                b = (b*a + Java2DFrameConverter.decodeGamma22((rgba >> 16) & 0xFF)*(255-a))/255;
-                                a = 0xFF/*(a+(a2 = dstBuf.get(dstPixel + 3)&0xFF))*/;
-                                rgba = r | (g  << 8) | (b << 16) | (a << 24);
-                                dstBufInt.put(dstPixel/4, rgba);
-                                break;
-                            default: assert false;
-                        }
-                    }
-                }}});
+                alphaBlend(imageToProject, frameImage);
             }
         }
 
@@ -852,6 +903,11 @@ public class RealityAugmentor {
         if (r == null || r.width <= 0 || r.height <= 0) {
             chronometer = null;
         } else if (chronometer == null) {
+            if (frameImage == imageToProject && imageToProjectShared) {
+                // the chronometer draws over the image, so it needs its own copy
+                imageToProject = frameImage = imageToProject.clone();
+                imageToProjectShared = false;
+            }
             chronometer = new Chronometer(r, frameImage);
         }
         if (chronometer != null) {
@@ -861,6 +917,120 @@ public class RealityAugmentor {
         return frameImage;
     }
 
+    /** Converts a gamma-encoded TYPE_INT_RGB screen capture into linear dstImage. */
+    static void copyScreenCapture(final int[] srcData, final int srcStep, IplImage dstImage) {
+        final int dstStep = dstImage.widthStep();
+        final int dstChannels = dstImage.nChannels();
+        final ByteBuffer dstBuf = dstImage.getByteBuffer();
+        final IntBuffer dstBufInt = dstChannels == 4 ? dstBuf.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
+        final int dstWidth = dstImage.width();
+        final int dstHeight = dstImage.height();
+
+//        for (int y = 0; y < dstHeight; y++) {
+        Parallel.loop(0, dstHeight, new Parallel.Looper() {
+        public void loop(int from, int to, int looperID) {
+        for (int y = from; y < to; y++) {
+            int srcPixel = y*srcStep;
+            int dstPixel = y*dstStep;
+            for (int x = 0; x < dstWidth; x++, srcPixel++, dstPixel += dstChannels) {
+                int rgb = srcData[srcPixel];
+                switch (dstChannels) {
+                    case 1:
+                        int lumi = (Java2DFrameConverter.decodeGamma22((rgb >> 16) & 0xFF) +
+                                    Java2DFrameConverter.decodeGamma22((rgb >>  8) & 0xFF) +
+                                    Java2DFrameConverter.decodeGamma22((rgb      ) & 0xFF)) / 3;
+                        dstBuf.put(dstPixel, (byte)lumi);
+                        break;
+                    case 3: // BGR
+                        dstBuf.put(dstPixel + 0, (byte)Java2DFrameConverter.decodeGamma22((rgb      ) & 0xFF));
+                        dstBuf.put(dstPixel + 1, (byte)Java2DFrameConverter.decodeGamma22((rgb >>  8) & 0xFF));
+                        dstBuf.put(dstPixel + 2, (byte)Java2DFrameConverter.decodeGamma22((rgb >> 16) & 0xFF));
+                        break;
+                    case 4: // RGBA
+                        int rgba = (Java2DFrameConverter.decodeGamma22((rgb >> 16) & 0xFF)      ) |
+                                   (Java2DFrameConverter.decodeGamma22((rgb >>  8) & 0xFF) <<  8) |
+                                   (Java2DFrameConverter.decodeGamma22((rgb      ) & 0xFF) << 16) | (0xFF << 24);
+                        dstBufInt.put(dstPixel/4, rgba);
+                        break;
+                    default: assert false;
+                }
+            }
+        }}});
+    }
+
+    /** Blends srcImage, linear with alpha, over the gamma-encoded dstImage, inside the ROI of srcImage. */
+    static void alphaBlend(IplImage srcImage, IplImage dstImage) {
+        int w  = Math.min(srcImage.width(),  dstImage.width());
+        int h  = Math.min(srcImage.height(), dstImage.height());
+        IplROI srcRoi   = srcImage.roi();
+        final int srcStep     = srcImage.widthStep(), dstStep     = dstImage.widthStep();
+        final int srcChannels = srcImage.nChannels(), dstChannels = dstImage.nChannels();
+        int srcIndex = 0, dstIndex = 0;
+        if (srcRoi != null) {
+            srcIndex = srcRoi.yOffset()*srcStep + srcRoi.xOffset()*srcChannels;
+            dstIndex = srcRoi.yOffset()*dstStep + srcRoi.xOffset()*dstChannels;
+            w = srcRoi.width();
+            h = srcRoi.height();
+        }
+        final ByteBuffer srcBuf = srcImage.getByteBuffer(srcIndex);
+        final ByteBuffer dstBuf = dstImage.getByteBuffer(dstIndex);
+        final IntBuffer srcBufInt = srcChannels == 4 ? srcBuf.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
+        final IntBuffer dstBufInt = dstChannels == 4 ? dstBuf.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
+        final int width  = w;
+        final int height = h;
+
+//        for (int y = 0; y < height; y++) {
+        Parallel.loop(0, height, new Parallel.Looper() {
+        public void loop(int from, int to, int looperID) {
+        for (int y = from; y < to; y++) {
+            int srcPixel = y*srcStep;
+            int dstPixel = y*dstStep;
+            for (int x = 0; x < width; x++, srcPixel += srcChannels, dstPixel += dstChannels) {
+                int r = 0, g = 0, b = 0, a = 128;
+                switch (srcChannels) {
+                    case 1:
+                        r = g = b = srcBuf.get(srcPixel) & 0xFF;
+                        break;
+                    case 3: // BGR
+                        b = srcBuf.get(srcPixel    ) & 0xFF;
+                        g = srcBuf.get(srcPixel + 1) & 0xFF;
+                        r = srcBuf.get(srcPixel + 2) & 0xFF;
+                        break;
+                    case 4: // RGBA
+                        int rgba = srcBufInt.get(srcPixel/4);
+                        r = (rgba      ) & 0xFF;
+                        g = (rgba >>  8) & 0xFF;
+                        b = (rgba >> 16) & 0xFF;
+                        a = (rgba >> 24) & 0xFF;
+                        break;
+                    default: assert false;
+                }
+
+                switch (dstChannels) {
+                    case 1:
+                        int lumi = (r + g + b)/3;
+                        dstBuf.put(dstPixel,  (byte)((lumi*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel    ))*(255-a))/255));
+                        break;
+                    case 3: // BGR
+                        dstBuf.put(dstPixel,     (byte)((b*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel    ))*(255-a))/255));
+                        dstBuf.put(dstPixel + 1, (byte)((g*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel + 1))*(255-a))/255));
+                        dstBuf.put(dstPixel + 2, (byte)((r*a + Java2DFrameConverter.decodeGamma22(dstBuf.get(dstPixel + 2))*(255-a))/255));
+                        break;
+                    case 4: // RGBA
+                        int rgba = dstBufInt.get(dstPixel/4);
+                        r = (r*a + Java2DFrameConverter.decodeGamma22((rgba      ) & 0xFF)*(255-a))/255;
+                        g = (g*a + Java2DFrameConverter.decodeGamma22((rgba >>  8) & 0xFF)*(255-a))/255;
+                        b = (b*a + Java2DFrameConverter.decodeGamma22((rgba >> 16) & 0xFF)*(255-a))/255;
+                        a = 0xFF/*(a+(a2 = dstBuf.get(dstPixel + 3)&0xFF))*/;
+                        rgba = r | (g  << 8) | (b << 16) | (a << 24);
+                        dstBufInt.put(dstPixel/4, rgba);
+                        break;
+                    default: assert false;
+                }
+            }
+        }}});
+    }
+
     public boolean needsMouse() {
         if (virtualSettings != null && virtualSettings.desktopScreenNumber >= 0) {
             return true;
@@ -874,163 +1044,216 @@ public class RealityAugmentor {
         return false;
     }
 
-    public void update(final IplImage projectorImage, final CvRect prevroi,
-            final double imageMouseX, final double imageMouseY, final boolean mouseClick,
-            final ProCamTransformer.Parameters parameters) throws Exception {
-//            System.out.println("A  " + imageMouseX + " " + imageMouseY);
-        future = executor.submit(new Callable<CvRect>() { public CvRect call() throws Exception {
-            int objectMouseX = -1, objectMouseY = -1;
-            if (imageMouseX >= 0 && imageMouseY >= 0 && textureImage != null) {
-                int w = textureImage.width(), h = textureImage.height();
-                double[] pts = { 0.0, 0.0,  w, 0.0,  w, h,  0.0, h };
-                JavaCV.getPerspectiveTransform(pts, roiPts, tempH);
-                composeParameters[0].compose(parameters.getSurfaceParameters().getH(), false, tempH, false);
-                composeWarper.transform(dstPts.put(imageMouseX, imageMouseY), dstPts, composeParameters[0], true);
-                objectMouseX = (int)Math.round(dstPts.get(0));
-                objectMouseY = (int)Math.round(dstPts.get(1));
-    //            System.out.println("B  " + objectMouseX + " " + objectMouseY);
-            }
-            if (mouseClick) {
-                for (VirtualSettings vs : objectSettings.toArray()) {
-                    Rectangle r = vs.objectHotSpot;
-                    if (r != null && r.contains(objectMouseX, objectMouseY)) {
-                        setVirtualSettings(vs);
-                        initVirtualSettings();
-                        break;
-                    }
+    public void update(IplImage projectorImage, CvRect prevroi,
+            double imageMouseX, double imageMouseY, boolean mouseClick,
+            ProCamTransformer.Parameters parameters) throws Exception {
+        // hand over the arguments to the update thread without allocating anything
+        UpdateTask t = updateTask;
+        t.projectorImage = projectorImage;
+        t.prevroi        = prevroi;
+        t.imageMouseX    = imageMouseX;
+        t.imageMouseY    = imageMouseY;
+        t.mouseClick     = mouseClick;
+        t.parameters     = parameters;
+        if (!updateStage.isStarted()) {
+            updateStage.start(pairName);
+        }
+        updatePending = true;
+        updateStage.submit(t);
+    }
+
+    private static double[] rectanglePts(double w, double h, double[] pts) {
+        pts[0] = 0.0; pts[1] = 0.0;
+        pts[2] = w;   pts[3] = 0.0;
+        pts[4] = w;   pts[5] = h;
+        pts[6] = 0.0; pts[7] = h;
+        return pts;
+    }
+
+    private CvRect doUpdate(IplImage projectorImage, CvRect prevroi,
+            double imageMouseX, double imageMouseY, boolean mouseClick,
+            ProCamTransformer.Parameters parameters) throws Exception {
+        int objectMouseX = -1, objectMouseY = -1;
+        if (imageMouseX >= 0 && imageMouseY >= 0 && textureImage != null) {
+            int w = textureImage.width(), h = textureImage.height();
+            double[] pts = rectanglePts(w, h, this.pts);
+            JavaCV.getPerspectiveTransform(pts, roiPts, tempH);
+            composeParameters[0].compose(parameters.getSurfaceParameters().getH(), false, tempH, false);
+            composeWarper.transform(dstPts.put(0, imageMouseX).put(1, imageMouseY), dstPts, composeParameters[0], true);
+            objectMouseX = (int)Math.round(dstPts.get(0));
+            objectMouseY = (int)Math.round(dstPts.get(1));
+//            System.out.println("B  " + objectMouseX + " " + objectMouseY);
+        }
+        if (mouseClick) {
+            for (VirtualSettings vs : objectSettings.toArray()) {
+                Rectangle r = vs.objectHotSpot;
+                if (r != null && r.contains(objectMouseX, objectMouseY)) {
+                    setVirtualSettings(vs);
+                    initVirtualSettings();
+                    break;
                 }
             }
+        }
 
-            int pw = projectorImage.width(), ph = projectorImage.height();
-            double[] projPts = { 0.0, 0.0,  pw, 0.0,  pw, ph,  0.0, ph };
-            if (virtualSettings == null) {
-                cvSet(projectorImage, CvScalar.WHITE);
-                maxroi.x(0).y(0).width(pw).height(ph);
-                return null;
-            }
+        int pw = projectorImage.width(), ph = projectorImage.height();
+        double[] projPts = rectanglePts(pw, ph, this.projPts);
+        if (virtualSettings == null) {
+            cvSet(projectorImage, CvScalar.WHITE);
+            maxroi.x(0).y(0).width(pw).height(ph);
+            return null;
+        }
 
-            if (!objectSettings.surfaceHasTexture) {
-                // find on the plane the largest rectangle centered inside the projector
-                // region as well as the transformation to rectify the display
-                projector.getFrontoParallelH(projPts, parameters.getN(), tempH);
-                cvMatMul(projector.cameraMatrix, tempH, tempH);
-                cvInvert(tempH, tempH);
-                cvPerspectiveTransform(dstPts.put(projPts), dstPts, tempH);
-                box.angle(0).size().width(pw).height(ph);
-                JavaCV.boundedRect(boxPts.put(dstPts), box);
-                cvBoxPoints(box, boxPtsData);
-                CvPoint2D32f center = box.center();
-                double centerX = center.x();
-                double centerY = center.y();
-                for (int i = 0; i < 4; i++) {
-                    double x = boxPts.get(2*i    );
-                    double y = boxPts.get(2*i + 1);
-                    if (x > centerX) {
-                        if (y > centerY) {
-                            dstPts.put(0, x).put(1, y);
-                        } else {
-                            dstPts.put(6, x).put(7, y);
-                        }
+        if (!objectSettings.surfaceHasTexture) {
+            // find on the plane the largest rectangle centered inside the projector
+            // region as well as the transformation to rectify the display
+            projector.getFrontoParallelH(projPts, parameters.getN(), tempH);
+            cvMatMul(projector.cameraMatrix, tempH, tempH);
+            cvInvert(tempH, tempH);
+            cvPerspectiveTransform(dstPts.put(projPts), dstPts, tempH);
+            box.angle(0).size().width(pw).height(ph);
+            JavaCV.boundedRect(boxPts.put(dstPts), box);
+            cvBoxPoints(box, boxPtsData);
+            CvPoint2D32f center = box.center();
+            double centerX = center.x();
+            double centerY = center.y();
+            for (int i = 0; i < 4; i++) {
+                double x = boxPts.get(2*i    );
+                double y = boxPts.get(2*i + 1);
+                if (x > centerX) {
+                    if (y > centerY) {
+                        dstPts.put(0, x).put(1, y);
                     } else {
-                        if (y > centerY) {
-                            dstPts.put(2, x).put(3, y);
-                        } else {
-                            dstPts.put(4, x).put(5, y);
-                        }
+                        dstPts.put(6, x).put(7, y);
+                    }
+                } else {
+                    if (y > centerY) {
+                        dstPts.put(2, x).put(3, y);
+                    } else {
+                        dstPts.put(4, x).put(5, y);
                     }
                 }
-                cvInvert(tempH, tempH);
-                cvPerspectiveTransform(dstPts, dstPts, tempH);
+            }
+            cvInvert(tempH, tempH);
+            cvPerspectiveTransform(dstPts, dstPts, tempH);
 //System.out.println(dstPts);
-                JavaCV.getPerspectiveTransform(projPts, dstPts.get(), tempH);
-                composeParameters[0].set(tempH, false);
+            dstPts.get(dstPtsData);
+            JavaCV.getPerspectiveTransform(projPts, dstPtsData, tempH);
+            composeParameters[0].set(tempH, false);
 
-                if (imageMouseX >= 0 && imageMouseY >= 0) {
-                    composeParameters[0].compose(parameters.getProjectorParameters(), false, composeParameters[0], false);
-                    composeWarper.transform(dstPts.put(imageMouseX, imageMouseY), dstPts, composeParameters[0], true);
-                    objectMouseX = (int)Math.round(dstPts.get(0));
-                    objectMouseY = (int)Math.round(dstPts.get(1));
-        //            System.out.println("C  " + objectMouseX + " " + objectMouseY);
-                }
+            if (imageMouseX >= 0 && imageMouseY >= 0) {
+                composeParameters[0].compose(parameters.getProjectorParameters(), false, composeParameters[0], false);
+                composeWarper.transform(dstPts.put(0, imageMouseX).put(1, imageMouseY), dstPts, composeParameters[0], true);
+                objectMouseX = (int)Math.round(dstPts.get(0));
+                objectMouseY = (int)Math.round(dstPts.get(1));
+    //            System.out.println("C  " + objectMouseX + " " + objectMouseY);
             }
+        }
 
-            IplImage frameImage = nextFrameImage(objectMouseX, objectMouseY, mouseClick);
-            if (virtualSettings.projectionType == ProjectionType.TRACKED) {
-                int w = frameImage.width(), h = frameImage.height();
-                double[] framePts = { 0.0, 0.0,  w, 0.0,  w, h,  0.0, h };
-                if (objectSettings.surfaceHasTexture) {
-                    // track the ROI on the surface plane
-                    JavaCV.getPerspectiveTransform(framePts, roiPts, tempH);
-                    composeParameters[0].compose(parameters.getProjectorParameters(), true,
-                                                 parameters.getSurfaceParameters(), false);
-                    composeParameters[0].compose(composeParameters[0].getH(), false, tempH, false);
-                } else {
-                    // rectify the projector display on the plane
-                    composeParameters[0].set(tempH, false);
-                    JavaCV.getPerspectiveTransform(framePts, projPts, tempH);
-                    composeParameters[0].compose(composeParameters[0].getH(), false, tempH, false);
-                }
-                composeWarper.transform(dstPts.put(framePts), dstPts, composeParameters[0], false);
-                composeWarper.setFillColor(CvScalar.WHITE);
-                //composeData[0].srcImg   = frameImage;
-                //composeData[0].transImg = projectorImage;
-                if (prevroi == null) {
-                    composeWarper.transform(frameImage, projectorImage, null, 0, composeParameters[0], false);
-                    //composeWarper.transform(composeData, null, composeParameters, null);
-                } else {
-                    roi.x(0).y(0).width(projectorImage.width()).height(projectorImage.height());
-                    // Add +3 all around because cvWarpPerspective() needs it for interpolation,
-                    // and there seems to be something funny with memory alignment and
-                    // ROIs, so let's align our ROI to a 16 byte boundary just in case..
-                    JavaCV.boundingRect(dstPts.get(), roi, 3, 3, 16, 1);
-                    //System.out.println(roi);
-
-                    maxroi.x     (Math.min(prevroi.x(), roi.x()));
-                    maxroi.y     (Math.min(prevroi.y(), roi.y()));
-                    maxroi.width (Math.max(prevroi.x()+prevroi.width(),  roi.x()+roi.width())  - maxroi.x());
-                    maxroi.height(Math.max(prevroi.y()+prevroi.height(), roi.y()+roi.height()) - maxroi.y());
-
-                    composeWarper.transform(frameImage, projectorImage, maxroi, 0, composeParameters[0], false);
-                    //composeWarper.transform(composeData, maxroi, composeParameters, null);
-
-                    prevroi.x(roi.x()).y(roi.y()).width(roi.width()).height(roi.height());
-                }
-            } else { // Settings.ProjectionType.FIXED
-                dstPts.put(0.0, 0.0,  pw, 0.0,  pw, ph,  0.0, ph);
-                if (frameImage.width() == pw && frameImage.height() == ph) {
-                    cvCopy(frameImage, projectorImage);
-                } else {
-                    cvResize(frameImage, projectorImage);
-                }
-                maxroi.x(0).y(0).width(pw).height(ph);
+        IplImage frameImage = nextFrameImage(objectMouseX, objectMouseY, mouseClick);
+        if (virtualSettings.projectionType == ProjectionType.TRACKED) {
+            int w = frameImage.width(), h = frameImage.height();
+            double[] framePts = rectanglePts(w, h, this.framePts);
+            if (objectSettings.surfaceHasTexture) {
+                // track the ROI on the surface plane
+                JavaCV.getPerspectiveTransform(framePts, roiPts, tempH);
+                composeParameters[0].compose(parameters.getProjectorParameters(), true,
+                                             parameters.getSurfaceParameters(), false);
+                composeParameters[0].compose(composeParameters[0].getH(), false, tempH, false);
+            } else {
+                // rectify the projector display on the plane
+                composeParameters[0].set(tempH, false);
+                JavaCV.getPerspectiveTransform(framePts, projPts, tempH);
+                composeParameters[0].compose(composeParameters[0].getH(), false, tempH, false);
             }
-
-            if (!virtualSettings.virtualBallEnabled) {
-                virtualBall = null;
-            } else if (virtualBall == null) {
-                virtualBallSettings.setInitialRoiPts(dstPts.get());
-                virtualBall = new VirtualBall(virtualBallSettings);
+            composeWarper.transform(dstPts.put(framePts), dstPts, composeParameters[0], false);
+            composeWarper.setFillColor(CvScalar.WHITE);
+            //composeData[0].srcImg   = frameImage;
+            //composeData[0].transImg = projectorImage;
+            if (prevroi == null) {
+                composeWarper.transform(frameImage, projectorImage, null, 0, composeParameters[0], false);
+                //composeWarper.transform(composeData, null, composeParameters, null);
+            } else {
+                roi.x(0).y(0).width(projectorImage.width()).height(projectorImage.height());
+                // Add +3 all around because cvWarpPerspective() needs it for interpolation,
+                // and there seems to be something funny with memory alignment and
+                // ROIs, so let's align our ROI to a 16 byte boundary just in case..
+                dstPts.get(dstPtsData);
+                JavaCV.boundingRect(dstPtsData, roi, 3, 3, 16, 1);
+                //System.out.println(roi);
+
+                maxroi.x     (Math.min(prevroi.x(), roi.x()));
+                maxroi.y     (Math.min(prevroi.y(), roi.y()));
+                maxroi.width (Math.max(prevroi.x()+prevroi.width(),  roi.x()+roi.width())  - maxroi.x());
+                maxroi.height(Math.max(prevroi.y()+prevroi.height(), roi.y()+roi.height()) - maxroi.y());
+
+                composeWarper.transform(frameImage, projectorImage, maxroi, 0, composeParameters[0], false);
+                //composeWarper.transform(composeData, maxroi, composeParameters, null);
+
+                prevroi.x(roi.x()).y(roi.y()).width(roi.width()).height(roi.height());
             }
-            if (virtualBall != null) {
-                cvSetImageROI(projectorImage, roi);
-                virtualBall.draw(projectorImage, dstPts.get());
+        } else { // Settings.ProjectionType.FIXED
+            dstPts.put(projPts);
+            if (frameImage.width() == pw && frameImage.height() == ph) {
+                cvCopy(frameImage, projectorImage);
+            } else {
+                cvResize(frameImage, projectorImage);
             }
+            maxroi.x(0).y(0).width(pw).height(ph);
+        }
 
-            return prevroi == null ? null : maxroi;
-        }});
+        if (!virtualSettings.virtualBallEnabled) {
+            virtualBall = null;
+        } else if (virtualBall == null) {
+            virtualBallSettings.setInitialRoiPts(dstPts.get());
+            virtualBall = new VirtualBall(virtualBallSettings);
+        }
+        if (virtualBall != null) {
+            cvSetImageROI(projectorImage, roi);
+            dstPts.get(dstPtsData);
+            virtualBall.draw(projectorImage, dstPtsData);
+        }
+
+        return prevroi == null ? null : maxroi;
     }
 
+    /** Waits for the last update to finish, and returns the region it modified, or null for the whole image. */
     public CvRect getUpdateRect() throws Exception {
-        return future.get();
+        if (updatePending) {
+            updateStage.await();
+            updatePending = false;
+        }
+        return updateTask.result;
+    }
+
+    /** Stops the thread running the updates. */
+    public void release() throws InterruptedException {
+        updateStage.stop();
+    }
+
+    /** Returns the time in nanoseconds taken by the last update, once getUpdateRect() has returned. */
+    public long getUpdateTime() {
+        return updateTime;
     }
 
     public String drawRoi(IplImage monitorImage, int pyramidLevel, IplImage cameraImage,
             ProCamTransformer transformer, ProCamTransformer.Parameters parameters) {
+        return drawRoi(monitorImage, pyramidLevel, cameraImage, camera.getMapsPyramidLevel(), transformer, parameters);
+    }
+
+    /**
+     * Draws the tracked ROI, and with the marker detector, the detected markers, whose
+     * error with the tracking gets returned. Only the latter needs cameraImage,
+     * undistorted at pyramid level cameraImageLevel, and gets skipped when it is null.
+     * Does not touch the state used by
+     * {@link #update}, so it can run on another thread.
+     */
+    public String drawRoi(IplImage monitorImage, int pyramidLevel, IplImage cameraImage, int cameraImageLevel,
+            ProCamTransformer transformer, ProCamTransformer.Parameters parameters) {
         String infoLogString = "";
 
         // if we use the marker detector, compute the error with our tracking
         if (objectSettings.roiAcquisitionMethod ==
-                RoiAcquisitionMethod.MARKER_DETECTOR && markerDetector != null) {
+                RoiAcquisitionMethod.MARKER_DETECTOR && markerDetector != null && cameraImage != null) {
             Marker[] markers = new Marker[4];
             boolean missing;
             MarkerDetector.Settings ms = new MarkerDetector.Settings();
@@ -1052,21 +1275,21 @@ public class RealityAugmentor {
                 markerDetector.setSettings(ms);
             } while (missing && ms.getThresholdKBlackMarkers() > 0);
 
-            transformer.transform(srcPts, dstPts, parameters, false);
+            transformer.transform(srcPts, drawPts, parameters, false);
 
             infoLogString += "  (";
             for (int j = 0; j < 4; j++) {
                 for (Marker m : markers) {
                     if (m != null && m.id == j) {
                         double[] center = m.getCenter();
-                        double dx = center[0]*(1<<camera.getMapsPyramidLevel()) - dstPts.get(j*2);
-                        double dy = center[1]*(1<<camera.getMapsPyramidLevel()) - dstPts.get(j*2+1);
+                        double dx = center[0]*(1<<cameraImageLevel) - drawPts.get(j*2);
+                        double dy = center[1]*(1<<cameraImageLevel) - drawPts.get(j*2+1);
                         double error = dx*dx + dy*dy;
                         infoLogString += (float)Math.sqrt(error) + (j < 3 ? ", " : "");
                         markerError += error;
                         markerErrorCount++;
 
-                        corners.put((byte)(16-pyramidLevel+camera.getMapsPyramidLevel()), m.corners);
+                        corners.put((byte)(16-pyramidLevel+cameraImageLevel), m.corners);
                         cvLine(monitorImage, corners.position(0), corners2.position(2),
                                 CV_RGB(monitorImage.highValue(), 0, 0), 1, CV_AA, 16);
                         cvLine(monitorImage, corners.position(1), corners2.position(3),
@@ -1075,16 +1298,16 @@ public class RealityAugmentor {
                     }
                 }
                 tempPts.position(j);
-                tempPts.x((int)Math.round(dstPts.get(j*2)   * (1<<16-pyramidLevel)));
-                tempPts.y((int)Math.round(dstPts.get(j*2+1) * (1<<16-pyramidLevel)));
+                tempPts.x((int)Math.round(drawPts.get(j*2)   * (1<<16-pyramidLevel)));
+                tempPts.y((int)Math.round(drawPts.get(j*2+1) * (1<<16-pyramidLevel)));
             }
             infoLogString += ")  " + (float)Math.sqrt(markerError/markerErrorCount);
 
             cvPolyLine(monitorImage, tempPts.position(0), tempNPts, 1, 1,
                     CV_RGB(0, monitorImage.highValue(), 0), 1, CV_AA, 16);
         } else {
-            transformer.transform(dstPts.put(roiPts), dstPts, parameters, false);
-            tempPts.put((byte)(16-pyramidLevel), dstPts.get());
+            transformer.transform(drawPts.put(roiPts), drawPts, parameters, false);
+            tempPts.put((byte)(16-pyramidLevel), drawPts.get());
             cvPolyLine(monitorImage, tempPts.position(0), tempNPts, 1, 1,
                     CV_RGB(0, monitorImage.highValue(), 0), 1, CV_AA, 16);
         }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Encodes frames with a {@link FrameRecorder} on its own thread. Callers only copy
+ * their image into one of a fixed pool of preallocated images, resizing it if needed,
+ * and the encoder thread applies the gamma correction and records it. When all the
+ * images of the pool are waiting to be encoded, the {@link Policy} decides what
+ * happens to the new frame.
+ *
+ * @author Samuel Audet
+ */
+public class RecordingStage implements RecordingStageMBean, Runnable {
+    public static enum Policy {
+        /** Waits for the encoder to free an image, losing no frames. */
+        BLOCK,
+        /** Replaces the oldest frame not yet encoded. */
+        DROP_OLDEST,
+        /** Drops the new frame. */
+        DROP_NEWEST
+    }
+
+    /**
+     * @param recorder the started recorder, which the caller stops after {@link #stop()}
+     * @param template the size and format of the images to record
+     * @param capacity the number of images in the pool
+     * @param gamma    the gamma correction to apply before encoding, or 1.0 for none
+     */
+    public RecordingStage(String name, FrameRecorder recorder, IplImage template,
+            int capacity, Policy policy, double gamma) {
+        this.name = name;
+        this.recorder = recorder;
+        this.policy = policy;
+        this.gamma = gamma;
+        this.pool = new IplImage[Math.max(1, capacity)];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = IplImage.createCompatible(template);
+            free.add(pool[i]);
+        }
+    }
+
+    private final String name;
+    private final FrameRecorder recorder;
+    private final Policy policy;
+    private final double gamma;
+    private final IplImage[] pool;
+    private final OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
+    // guarded by this
+    private final ArrayDeque<IplImage> free = new ArrayDeque<IplImage>();
+    private final ArrayDeque<IplImage> queued = new ArrayDeque<IplImage>();
+    private IplImage encoding = null;
+    private Thread thread = null;
+    private ObjectName objectName = null;
+    private volatile Throwable failure = null;
+    private volatile long encodedCount = 0, encodingTime = 0, droppedCount = 0, blockedCount = 0;
+    private volatile int queueMaxDepth = 0;
+    private volatile double encodedFramesPerSecond = 0;
+    private long rateStartTime = 0, rateStartCount = 0;
+
+    private static final Logger logger = Logger.getLogger(RecordingStage.class.getName());
+
+    public String getName() {
+        return name;
+    }
+    public String getPolicy() {
+        return policy.toString();
+    }
+    public long getEncodedCount() {
+        return encodedCount;
+    }
+    public double getEncodedFramesPerSecond() {
+        return encodedFramesPerSecond;
+    }
+    public double getEncodingMillis() {
+        return encodingTime / 1000000.0;
+    }
+    public synchronized int getQueueDepth() {
+        return queued.size();
+    }
+    public int getQueueMaxDepth() {
+        return queueMaxDepth;
+    }
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    public synchronized boolean isStarted() {
+        return thread != null;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        failure = null;
+        rateStartTime = System.nanoTime();
+        rateStartCount = encodedCount;
+        thread = new Thread(this, "ProCamTracker " + name);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            objectName = new ObjectName("org.bytedeco.procamtracker:type=TrackingPipeline,stage=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            logger.warning("Could not register recording MBean " + objectName + ", since another stage has its name.");
+            objectName = null;
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not register recording MBean for stage " + name + ".", e);
+            objectName = null;
+        }
+    }
+
+    /** Encodes the frames still queued, stops the thread, and releases the pool. */
+    public void stop() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            notifyAll();
+        }
+        if (t != null) {
+            t.join();
+        }
+        synchronized (this) {
+            if (objectName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Could not unregister recording MBean " + objectName + ".", e);
+                }
+                objectName = null;
+            }
+            queued.clear();
+            free.clear();
+            for (IplImage image : pool) {
+                image.release();
+            }
+        }
+    }
+
+    /**
+     * Queues a copy of the image for encoding, resized to the size of the pool,
+     * rethrowing any failure of the encoder.
+     *
+     * @return false if the frame got dropped
+     */
+    public boolean record(IplImage image) throws Exception {
+        Throwable f = failure;
+        if (f instanceof Exception) {
+            throw (Exception)f;
+        } else if (f != null) {
+            throw new RuntimeException(f);
+        }
+
+        IplImage slot;
+        synchronized (this) {
+            if (thread == null) {
+                throw new IllegalStateException("Recording stage " + name + " is not started.");
+            }
+            slot = free.poll();
+            if (slot == null) {
+                if (policy == Policy.DROP_NEWEST) {
+                    droppedCount++;
+                    return false;
+                } else if (policy == Policy.DROP_OLDEST && !queued.isEmpty()) {
+                    slot = queued.poll();
+                    droppedCount++;
+                } else {
+                    blockedCount++;
+                    while ((slot = free.poll()) == null && thread != null) {
+                        wait();
+                    }
+                    if (slot == null) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        // the slot belongs to the caller until queued
+        if (image.width() == slot.width() && image.height() == slot.height()) {
+            cvCopy(image, slot);
+        } else {
+            cvResize(image, slot, CV_INTER_LINEAR);
+        }
+
+        synchronized (this) {
+            queued.add(slot);
+            if (queued.size() > queueMaxDepth) {
+                queueMaxDepth = queued.size();
+            }
+            notifyAll();
+        }
+        return true;
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                IplImage image;
+                synchronized (this) {
+                    if (encoding != null) {
+                        free.add(encoding);
+                        encoding = null;
+                        notifyAll();
+                    }
+                    while (thread != null && queued.isEmpty()) {
+                        wait();
+                    }
+                    if (queued.isEmpty()) {
+                        break;
+                    }
+                    image = encoding = queued.poll();
+                }
+                long startTime = System.nanoTime();
+                Frame frame = converter.convert(image);
+                if (gamma != 1.0) {
+                    Java2DFrameConverter.applyGamma(frame, gamma);
+                }
+                recorder.record(frame);
+                long endTime = System.nanoTime();
+                encodingTime += endTime - startTime;
+                encodedCount++;
+                if (endTime - rateStartTime >= 1000000000L) {
+                    encodedFramesPerSecond = (encodedCount - rateStartCount) * 1e9 / (endTime - rateStartTime);
+                    rateStartTime = endTime;
+                    rateStartCount = encodedCount;
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Throwable t) {
+            failure = t;
+            logger.log(Level.SEVERE, "Could not record frame.", t);
+        }
+        synchronized (this) {
+            if (encoding != null) {
+                free.add(encoding);
+                encoding = null;
+            }
+            notifyAll();
+        }
+    }
+}
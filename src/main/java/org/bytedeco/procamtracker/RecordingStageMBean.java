@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+/**
+ * The management interface of {@link RecordingStage}.
+ *
+ * @author Samuel Audet
+ */
+public interface RecordingStageMBean {
+    String getPolicy();
+    long getEncodedCount();
+    /** The number of frames encoded per second, over the last second or so. */
+    double getEncodedFramesPerSecond();
+    double getEncodingMillis();
+    int getQueueDepth();
+    int getQueueMaxDepth();
+    /** How many frames got dropped because the queue was full. */
+    long getDroppedCount();
+    /** How many times a caller had to wait for the encoder, with the BLOCK policy. */
+    long getBlockedCount();
+}
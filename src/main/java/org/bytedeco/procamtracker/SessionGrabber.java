@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+import static org.bytedeco.procamtracker.SessionRecorder.*;
+
+/**
+ * Replays the frames of a session saved by {@link SessionRecorder}, in the order
+ * they were grabbed, along with the frame rate, gamma, and sensor pattern of the
+ * camera. It never waits, not even for delayed grabs, so sessions replay as fast as
+ * the engine can track them, while the iteration deadlines still follow the
+ * recorded frame rate. {@link #flush()} does nothing, since frames that got
+ * flushed during the session were never saved.
+ *
+ * @author Samuel Audet
+ */
+public class SessionGrabber extends FrameGrabber {
+
+    public SessionGrabber(File file) {
+        this.file = file;
+    }
+
+    private final File file;
+    private RandomAccessFile raf = null;
+    private MappedByteBuffer header = null, chunk = null;
+    private long chunkIndex = -1, index = 0;
+    private int imageSize, recordSize, chunkRecords;
+    private IplImage image = null;
+    private OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
+    private boolean delayed = false;
+    private long delayedTime = 0;
+    private int projectorIndex = -1;
+    private double[] parameters = new double[0];
+
+    public File getFile() {
+        return file;
+    }
+    /** Returns the number of frames in the file, which may still be growing. */
+    public long getRecordCount() {
+        return header == null ? 0 : header.getLong(COUNT_OFFSET);
+    }
+    /** Returns {@link #getRecordCount()}, clamped to what fits in an int. */
+    @Override public int getLengthInFrames() {
+        return (int)Math.min(Integer.MAX_VALUE, getRecordCount());
+    }
+    /** Returns the index of the next frame to grab. */
+    public long getFrameIndex() {
+        return index;
+    }
+    public void setFrameIndex(long index) {
+        this.index = index;
+        this.delayed = false;
+    }
+    /** Returns the projector buffer index saved with the last frame grabbed, or -1. */
+    public int getProjectorIndex() {
+        return projectorIndex;
+    }
+    /** Returns the parameters tracked in the last frame grabbed during the session, if any. */
+    public double[] getParameters() {
+        return parameters;
+    }
+
+    @Override public void start() throws Exception {
+        try {
+            raf = new RandomAccessFile(file, "r");
+            header = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        } catch (IOException e) {
+            release();
+            throw new Exception("Could not open session file: " + file, e);
+        }
+        header.order(ByteOrder.nativeOrder());
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            release();
+            throw new Exception("Not a session file: " + file);
+        }
+        int width = header.getInt(8), height = header.getInt(12), depth = header.getInt(16),
+                channels = header.getInt(20), widthStep = header.getInt(24);
+        imageSize = header.getInt(28);
+        recordSize = recordSize(imageSize);
+        chunkRecords = Math.max(1, CHUNK_SIZE / recordSize);
+        frameRate = header.getDouble(40);
+        gamma = header.getDouble(48);
+        sensorPattern = header.getLong(56);
+        image = IplImage.create(width, height, depth, channels);
+        if (image.widthStep() != widthStep || image.imageSize() != imageSize) {
+            release();
+            throw new Exception("Unsupported image layout in session file: " + file);
+        }
+        imageWidth = width;
+        imageHeight = height;
+        index = 0;
+        delayed = false;
+    }
+
+    @Override public void stop() throws Exception {
+        delayed = false;
+    }
+
+    @Override public void trigger() throws Exception { }
+
+    @Override public void flush() throws Exception { }
+
+    @Override public Frame grab() throws Exception {
+        if (header == null || index >= getRecordCount()) {
+            return null;
+        }
+        long c = index / chunkRecords;
+        if (c != chunkIndex) {
+            long position = HEADER_SIZE + c*chunkRecords*(long)recordSize;
+            try {
+                long size = Math.min((long)chunkRecords*recordSize, raf.length() - position);
+                chunk = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (IOException e) {
+                throw new Exception("Could not read session file: " + file, e);
+            }
+            chunk.order(ByteOrder.nativeOrder());
+            chunkIndex = c;
+        }
+        int offset = (int)(index % chunkRecords)*recordSize;
+        if (offset + recordSize > chunk.capacity()) {
+            // still being written, or truncated
+            chunkIndex = -1;
+            return null;
+        }
+        timestamp      = chunk.getLong(offset) / 1000;   offset += 8;
+        frameNumber    = (int)chunk.getLong(offset);     offset += 8;
+        projectorIndex = chunk.getInt(offset);           offset += 4;
+        int n = chunk.getInt(offset);                    offset += 4;
+        if (parameters.length != n) {
+            parameters = new double[n];
+        }
+        for (int i = 0; i < n; i++) {
+            parameters[i] = chunk.getDouble(offset + 8*i);
+        }
+        offset += 8*MAX_PARAMETERS;
+        ByteBuffer src = chunk.duplicate();
+        src.position(offset).limit(offset + imageSize);
+        ByteBuffer dst = image.getByteBuffer();
+        dst.clear();
+        dst.put(src);
+        index++;
+        return converter.convert(image);
+    }
+
+    /** Marks the next frame as delayed, without waiting. */
+    @Override public void delayedGrab(long delayTime) {
+        delayed = true;
+        delayedTime = delayTime;
+    }
+    @Override public long getDelayedTime() {
+        return delayedTime;
+    }
+    @Override public Frame getDelayedFrame() throws ExecutionException {
+        if (!delayed) {
+            return null;
+        }
+        delayed = false;
+        try {
+            return grab();
+        } catch (Exception e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    @Override public void release() throws Exception {
+        header = chunk = null;
+        chunkIndex = -1;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                throw new Exception("Could not close session file: " + file, e);
+            } finally {
+                raf = null;
+            }
+        }
+        if (image != null) {
+            image.release();
+            image = null;
+        }
+    }
+}
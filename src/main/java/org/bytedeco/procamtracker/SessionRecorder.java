@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bytedeco.javacv.ImageTransformer;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+/**
+ * Appends the raw frames grabbed during a session, as they come out of the camera,
+ * before any gamma correction or undistortion, to a file mapped in memory, along
+ * with their timestamps, the index of the projector buffer they pair with, and the
+ * parameters tracked in them, filled in once known. {@link SessionGrabber} feeds
+ * them back to {@link TrackingEngine} in the same order, as fast as it can take them.
+ * <p>
+ * The header holds, in native byte order, the magic number, the version, the width,
+ * height, depth, channels, width step, and size of the images, the maximum number
+ * of parameters per record, a reserved int, the frame rate and gamma of the camera
+ * as doubles, its sensor pattern as a long, and then the number of records as a long,
+ * updated after each record. Each record holds the timestamp in nanoseconds, the
+ * frame number as a long, the projector buffer index or -1, the number of parameters,
+ * the parameters padded with NaN, and the image data, padded to a multiple of 8 bytes.
+ *
+ * @author Samuel Audet
+ */
+public class SessionRecorder {
+
+    static final int MAGIC = 0x50435453, VERSION = 1, HEADER_SIZE = 128, COUNT_OFFSET = 64,
+            MAX_PARAMETERS = 32, CHUNK_SIZE = 64 << 20;
+
+    public SessionRecorder(File file, IplImage template, double frameRate,
+            double gamma, long sensorPattern) throws IOException {
+        this.file = file;
+        this.imageSize = template.imageSize();
+        this.recordSize = recordSize(imageSize);
+        this.chunkRecords = Math.max(1, CHUNK_SIZE / recordSize);
+
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.nativeOrder());
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, template.width()).putInt(12, template.height())
+              .putInt(16, template.depth()).putInt(20, template.nChannels()).putInt(24, template.widthStep())
+              .putInt(28, imageSize).putInt(32, MAX_PARAMETERS).putInt(36, 0)
+              .putDouble(40, frameRate).putDouble(48, gamma).putLong(56, sensorPattern)
+              .putLong(COUNT_OFFSET, 0);
+    }
+
+    private final File file;
+    private final int imageSize, recordSize, chunkRecords;
+    private RandomAccessFile raf;
+    private MappedByteBuffer header;
+    // the chunk being appended to, and the one before, where parameters may still arrive
+    private MappedByteBuffer chunk = null, lastChunk = null;
+    private long chunkIndex = -1, count = 0;
+
+    private static final Logger logger = Logger.getLogger(SessionRecorder.class.getName());
+
+    static int recordSize(int imageSize) {
+        return (8 + 8 + 4 + 4 + 8*MAX_PARAMETERS + imageSize + 7) & ~7;
+    }
+
+    public File getFile() {
+        return file;
+    }
+    /** Returns the number of frames recorded, where the last one has index getCount() - 1. */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    private MappedByteBuffer map(long index) throws IOException {
+        long c = index / chunkRecords;
+        if (c == chunkIndex) {
+            return chunk;
+        } else if (c == chunkIndex - 1) {
+            return lastChunk;
+        } else if (c < chunkIndex) {
+            return null;
+        }
+        // the mapping grows the file as needed
+        long position = HEADER_SIZE + c*chunkRecords*(long)recordSize;
+        lastChunk = chunk;
+        chunk = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, position, (long)chunkRecords*recordSize);
+        chunk.order(ByteOrder.nativeOrder());
+        chunkIndex = c;
+        return chunk;
+    }
+
+    /**
+     * Appends a copy of the whole image, which must have the format of the template.
+     *
+     * @return the index of the record, to pass to {@link #setParameters}, or -1 once closed
+     */
+    public synchronized long record(IplImage image, long timestamp, long frameNumber,
+            int projectorIndex) throws IOException {
+        if (raf == null) {
+            return -1;
+        }
+        if (image.imageSize() != imageSize) {
+            throw new IOException("Image size " + image.imageSize() + " does not match " + imageSize + ".");
+        }
+        long index = count;
+        MappedByteBuffer map = map(index);
+        int offset = (int)(index % chunkRecords)*recordSize;
+        map.putLong(offset, timestamp);           offset += 8;
+        map.putLong(offset, frameNumber);         offset += 8;
+        map.putInt(offset, projectorIndex);       offset += 4;
+        map.putInt(offset, 0);                    offset += 4;   // no parameters yet
+        for (int i = 0; i < MAX_PARAMETERS; i++) {
+            map.putDouble(offset, Double.NaN);    offset += 8;
+        }
+        ByteBuffer dst = map.duplicate();
+        dst.position(offset);
+        ByteBuffer src = image.getByteBuffer();
+        src.clear().limit(imageSize);
+        dst.put(src);
+        header.putLong(COUNT_OFFSET, ++count);
+        return index;
+    }
+
+    /** Fills in the parameters tracked in the given record, if still mapped. */
+    public synchronized void setParameters(long index, ImageTransformer.Parameters parameters) throws IOException {
+        if (raf == null || index < 0 || index >= count) {
+            return;
+        }
+        MappedByteBuffer map = map(index);
+        if (map == null) {
+            return;
+        }
+        int n = Math.min(parameters.size(), MAX_PARAMETERS);
+        int offset = (int)(index % chunkRecords)*recordSize + 8 + 8 + 4;
+        map.putInt(offset, n);                    offset += 4;
+        for (int i = 0; i < n; i++) {
+            map.putDouble(offset, parameters.get(i));
+            offset += 8;
+        }
+    }
+
+    /** Flushes the records to disk, and trims the file to the records written, where possible. */
+    public synchronized void close() throws IOException {
+        if (raf == null) {
+            return;
+        }
+        if (chunk != null) {
+            chunk.force();
+        }
+        header.force();
+        chunk = lastChunk = null;
+        header = null;
+        try {
+            raf.setLength(HEADER_SIZE + count*recordSize);
+        } catch (IOException e) {
+            // some platforms cannot truncate files still mapped, but readers rely on the count anyway
+            logger.log(Level.FINE, "Could not trim session file " + file + ".", e);
+        }
+        raf.close();
+        raf = null;
+    }
+}
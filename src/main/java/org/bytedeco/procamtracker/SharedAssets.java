@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+/**
+ * Images loaded once and shared by all the {@link TrackingEngine} of a
+ * {@link TrackingSupervisor}, such as texture and projector image files. They are
+ * shared as is, so users must never modify them, but make a copy instead.
+ *
+ * @author Samuel Audet
+ */
+public class SharedAssets {
+
+    /** Loads an image the first time it is requested. */
+    public interface Loader {
+        IplImage load() throws Exception;
+    }
+
+    private final Map<String, IplImage> images = new HashMap<String, IplImage>();
+
+    /** Returns a key identifying the current content of the file, as loaded by the given kind of loader. */
+    public static String key(String kind, File file, int channels) {
+        return kind + ":" + channels + ":" + file.getAbsolutePath() + ":" + file.lastModified();
+    }
+
+    /** Returns the image for the key, calling the loader if not already loaded, or null if it failed. */
+    public synchronized IplImage get(String key, Loader loader) throws Exception {
+        IplImage image = images.get(key);
+        if (image == null) {
+            image = loader.load();
+            if (image != null) {
+                images.put(key, image);
+            }
+        }
+        return image;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /** Releases all images, once none of the engines use them anymore. */
+    public synchronized void release() {
+        for (IplImage image : images.values()) {
+            image.release();
+        }
+        images.clear();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free ring for exactly one producer thread and one consumer thread,
+ * used to pass preallocated buffers between the stages of the pipeline. Blocking
+ * operations spin briefly, then yield, then park until the other thread unparks
+ * them, and count how often the producer found the ring full and the consumer
+ * found it empty.
+ *
+ * @author Samuel Audet
+ */
+public class SpscRing<T> {
+    public SpscRing(int capacity) {
+        int c = 1;
+        while (c < capacity) {
+            c <<= 1;
+        }
+        slots = new Object[c];
+        mask = c - 1;
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    // next position to read, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next position to write, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong producerStalls = new AtomicLong(), consumerStalls = new AtomicLong();
+    // the thread parked in put() or take(), if any, to unpark after poll() or offer()
+    private volatile Thread parkedProducer = null, parkedConsumer = null;
+    private volatile int maxOccupancy = 0;
+
+    public int capacity() {
+        return slots.length;
+    }
+    public int size() {
+        return (int)(tail.get() - head.get());
+    }
+    public int getMaxOccupancy() {
+        return maxOccupancy;
+    }
+    /** Returns how many times put() found the ring full. */
+    public long getProducerStalls() {
+        return producerStalls.get();
+    }
+    /** Returns how many times take() found the ring empty. */
+    public long getConsumerStalls() {
+        return consumerStalls.get();
+    }
+
+    /** Called by the producer only. Returns false if the ring is full. */
+    public boolean offer(T item) {
+        long t = tail.get();
+        long h = head.get();
+        if (t - h >= slots.length) {
+            return false;
+        }
+        slots[(int)t & mask] = item;
+        // not lazySet(), so that a consumer about to park either sees the item or gets unparked
+        tail.set(t + 1);
+        int occupancy = (int)(t + 1 - h);
+        if (occupancy > maxOccupancy) {
+            maxOccupancy = occupancy;
+        }
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /** Called by the consumer only. Returns null if the ring is empty. */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        int i = (int)h & mask;
+        T item = (T)slots[i];
+        slots[i] = null;
+        head.set(h + 1);
+        Thread producer = parkedProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return item;
+    }
+
+    public void put(T item) throws InterruptedException {
+        if (offer(item)) {
+            return;
+        }
+        producerStalls.incrementAndGet();
+        for (int spins = 0; !offer(item); spins++) {
+            if (spins < PARK_SPINS) {
+                backoff(spins);
+            } else {
+                parkedProducer = Thread.currentThread();
+                // check again once visible to poll()
+                if (size() >= slots.length) {
+                    LockSupport.park(this);
+                }
+                parkedProducer = null;
+                checkInterrupted();
+            }
+        }
+    }
+
+    /** Waits at most timeout nanoseconds for an item, returning null on timeout. */
+    public T take(long timeout) throws InterruptedException {
+        T item = poll();
+        if (item != null) {
+            return item;
+        }
+        consumerStalls.incrementAndGet();
+        long deadline = System.nanoTime() + timeout;
+        for (int spins = 0; (item = poll()) == null; spins++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            } else if (spins < PARK_SPINS) {
+                backoff(spins);
+            } else {
+                parkedConsumer = Thread.currentThread();
+                // check again once visible to offer()
+                if (size() <= 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+                parkedConsumer = null;
+                checkInterrupted();
+            }
+        }
+        return item;
+    }
+
+    // after that many calls to backoff(), the waiting thread parks
+    static final int PARK_SPINS = 200;
+
+    static void backoff(int spins) throws InterruptedException {
+        checkInterrupted();
+        if (spins < 100) {
+            // busy spin, the other thread is usually about to finish
+        } else {
+            Thread.yield();
+        }
+    }
+
+    static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.bytedeco.procamtracker.TelemetryRecorder.*;
+
+/**
+ * Reads the ring file of a {@link TelemetryRecorder}, possibly while it is still
+ * being written, and exports its records, from oldest to newest, as CSV with times
+ * in milliseconds. From the command line:
+ * <pre>
+ * java -cp ... org.bytedeco.procamtracker.TelemetryReader telemetry.bin [telemetry.csv]
+ * </pre>
+ *
+ * @author Samuel Audet
+ */
+public class TelemetryReader {
+
+    public TelemetryReader(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        map.order(ByteOrder.nativeOrder());
+        if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a telemetry file: " + file);
+        }
+        recordSize     = map.getInt(8);
+        capacity       = map.getInt(12);
+        levels         = map.getInt(16);
+        stageCount     = map.getInt(20);
+        parameterCount = map.getInt(24);
+        if (recordSize != recordSize(levels, stageCount, parameterCount) ||
+                map.capacity() < HEADER_SIZE + (long)capacity*recordSize) {
+            throw new IOException("Corrupted telemetry file: " + file);
+        }
+    }
+
+    private final MappedByteBuffer map;
+    private final int recordSize, capacity, levels, stageCount, parameterCount;
+
+    public int getLevels() {
+        return levels;
+    }
+    public int getParameterCount() {
+        return parameterCount;
+    }
+    /** Returns the total number of records written, of which only the last capacity ones remain. */
+    public long getCount() {
+        return map.getLong(COUNT_OFFSET);
+    }
+
+    public void exportCsv(Writer out) throws IOException {
+        out.write("timestamp,frame,predicted,outlying,RMSE,outliers,pixels");
+        for (int i = 0; i < levels; i++) {
+            out.write(",iterations" + i);
+        }
+        for (int i = 0; i < stageCount; i++) {
+            out.write("," + (i < STAGE_NAMES.length ? STAGE_NAMES[i] : "stage" + i));
+        }
+        for (int i = 0; i < parameterCount; i++) {
+            out.write(",p" + i);
+        }
+        out.write("\n");
+
+        long count = getCount();
+        for (long r = Math.max(0, count - capacity); r < count; r++) {
+            int offset = HEADER_SIZE + (int)(r % capacity)*recordSize;
+            StringBuilder line = new StringBuilder();
+            line.append(map.getLong(offset)/1000000.0);               offset += 8;
+            line.append(',').append(map.getInt(offset));              offset += 4;
+            int flags = map.getInt(offset);                           offset += 4;
+            line.append(',').append((flags & PREDICTED) != 0 ? 1 : 0);
+            line.append(',').append((flags & OUTLYING)  != 0 ? 1 : 0);
+            line.append(',').append(map.getDouble(offset));           offset += 8;
+            line.append(',').append(map.getInt(offset));              offset += 4;
+            line.append(',').append(map.getInt(offset));              offset += 4;
+            for (int i = 0; i < levels; i++) {
+                line.append(',').append(map.getInt(offset));          offset += 4;
+            }
+            for (int i = 0; i < stageCount; i++) {
+                line.append(',').append(map.getLong(offset)/1000000.0); offset += 8;
+            }
+            for (int i = 0; i < parameterCount; i++) {
+                line.append(',').append(map.getDouble(offset));       offset += 8;
+            }
+            line.append('\n');
+            out.write(line.toString());
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TelemetryReader <telemetry file> [CSV file]");
+            System.exit(1);
+        }
+        TelemetryReader reader = new TelemetryReader(new File(args[0]));
+        Writer out = new BufferedWriter(args.length > 1 ? new FileWriter(args[1]) : new OutputStreamWriter(System.out));
+        try {
+            reader.exportCsv(out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.bytedeco.javacv.ImageTransformer;
+
+/**
+ * Records one fixed-size binary record per tracked frame into a ring file mapped
+ * in memory. Recording only stores a few values into the mapping, and the operating
+ * system writes them out asynchronously, so it costs next to nothing compared to
+ * formatting log messages, and keeps the latest frames even if the JVM crashes.
+ * Use {@link TelemetryReader} to export the records to CSV.
+ * <p>
+ * The header holds, as ints in native byte order, the magic number, the version,
+ * the record size, the capacity in records, the number of pyramid levels, stages,
+ * and parameters, a reserved int, and then the total number of records written as
+ * a long, updated after each record. Each record holds the timestamp in nanoseconds,
+ * the frame number, flags, the RMSE, the outlier and pixel counts, the iterations
+ * per level, the time of each stage in nanoseconds, and the parameters.
+ *
+ * @author Samuel Audet
+ */
+public class TelemetryRecorder {
+
+    static final int MAGIC = 0x50435454, VERSION = 1, HEADER_SIZE = 64, COUNT_OFFSET = 32;
+
+    /** The flags of a record. */
+    public static final int PREDICTED = 1, OUTLYING = 2;
+
+    /** The stages with their times in a record, in this order. */
+    public static final String[] STAGE_NAMES = { "grab", "undistort", "iterate",
+            "audit", "handMouse", "monitorDisplay", "augmentUpdate", "frame" };
+
+    public TelemetryRecorder(File file, int capacity, int levels, int parameterCount) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.levels = levels;
+        this.parameterCount = parameterCount;
+        this.recordSize = recordSize(levels, STAGE_NAMES.length, parameterCount);
+
+        long size = HEADER_SIZE + (long)capacity*recordSize;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // the mapping stays valid after closing the file
+            raf.close();
+        }
+        map.order(ByteOrder.nativeOrder());
+        map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, recordSize).putInt(12, capacity)
+           .putInt(16, levels).putInt(20, STAGE_NAMES.length).putInt(24, parameterCount).putInt(28, 0)
+           .putLong(COUNT_OFFSET, 0);
+    }
+
+    private final File file;
+    private final int capacity, levels, parameterCount, recordSize;
+    private MappedByteBuffer map;
+    private long count = 0;
+
+    static int recordSize(int levels, int stageCount, int parameterCount) {
+        return 8 + 4 + 4 + 8 + 4 + 4 + 4*levels + 8*stageCount + 8*parameterCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+    public int getParameterCount() {
+        return parameterCount;
+    }
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes a record over the oldest one once the ring is full. Missing levels,
+     * stages, or parameters get written as zeros, or NaN for parameters.
+     */
+    public void record(long timestamp, int frameNumber, int flags, double RMSE, int outlierCount,
+            int pixelCount, int[] iterationsPerLevel, long[] stageTimes, ImageTransformer.Parameters parameters) {
+        MappedByteBuffer map = this.map;
+        if (map == null) {
+            return;
+        }
+        int offset = HEADER_SIZE + (int)(count % capacity)*recordSize;
+        map.putLong(offset, timestamp);            offset += 8;
+        map.putInt(offset, frameNumber);           offset += 4;
+        map.putInt(offset, flags);                 offset += 4;
+        map.putDouble(offset, RMSE);               offset += 8;
+        map.putInt(offset, outlierCount);          offset += 4;
+        map.putInt(offset, pixelCount);            offset += 4;
+        for (int i = 0; i < levels; i++) {
+            map.putInt(offset, i < iterationsPerLevel.length ? iterationsPerLevel[i] : 0);
+            offset += 4;
+        }
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            map.putLong(offset, i < stageTimes.length ? stageTimes[i] : 0);
+            offset += 8;
+        }
+        int n = parameters == null ? 0 : parameters.size();
+        for (int i = 0; i < parameterCount; i++) {
+            map.putDouble(offset, i < n ? parameters.get(i) : Double.NaN);
+            offset += 8;
+        }
+        map.putLong(COUNT_OFFSET, ++count);
+    }
+
+    /** Flushes the records to disk and unmaps the file, as far as Java lets us. */
+    public void close() {
+        if (map != null) {
+            map.force();
+            map = null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.bytedeco.javacv.Parallel;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+/**
+ * Finds which tiles of an image changed since the last call, by comparing a
+ * 64-bit hash of their pixels, computed across all cores, so that only those
+ * need to be copied elsewhere, for example to an OpenCL image. Tiles never
+ * hashed before always count as changed.
+ *
+ * @author Samuel Audet
+ */
+class TileChangeDetector {
+    TileChangeDetector(int width, int height, int tileWidth, int tileHeight) {
+        this.width = width;
+        this.height = height;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        tilesX = (width  + tileWidth  - 1) / tileWidth;
+        tilesY = (height + tileHeight - 1) / tileHeight;
+        hashes  = new long[tilesX*tilesY];
+        valid   = new boolean[tilesX*tilesY];
+        changed = new boolean[tilesX*tilesY];
+    }
+
+    final int width, height, tileWidth, tileHeight, tilesX, tilesY;
+    private final long[] hashes;
+    private final boolean[] valid, changed;
+
+    /** Forgets all hashes, so that all tiles count as changed next time. */
+    public void invalidate() {
+        Arrays.fill(valid, false);
+    }
+
+    /** Returns true if the tile changed during the last call to {@link #update}. */
+    public boolean isChanged(int tx, int ty) {
+        return changed[ty*tilesX + tx];
+    }
+
+    /**
+     * Hashes the tiles of the image intersecting roi, or all of them if null,
+     * marks as changed those whose hash differs from last time, and returns their number.
+     */
+    public int update(IplImage image, CvRect roi) {
+        final int pixelSize = image.nChannels()*Math.abs(image.depth())/8;
+        final int step = image.widthStep();
+        final ByteBuffer in = image.getByteBuffer();
+        final int tx0 = roi == null ? 0 : Math.max(0, roi.x()/tileWidth);
+        final int ty0 = roi == null ? 0 : Math.max(0, roi.y()/tileHeight);
+        final int tx1 = roi == null ? tilesX : Math.min(tilesX, (roi.x() + roi.width()  + tileWidth  - 1)/tileWidth);
+        final int ty1 = roi == null ? tilesY : Math.min(tilesY, (roi.y() + roi.height() + tileHeight - 1)/tileHeight);
+        Arrays.fill(changed, false);
+        if (tx0 >= tx1 || ty0 >= ty1 || (roi != null && (roi.width() <= 0 || roi.height() <= 0))) {
+            return 0;
+        }
+        final int[] counts = new int[ty1 - ty0];
+        Parallel.loop(ty0, ty1, new Parallel.Looper() {
+        public void loop(int from, int to, int looperID) {
+        for (int ty = from; ty < to; ty++) {
+            int y0 = ty*tileHeight, y1 = Math.min(height, y0 + tileHeight);
+            for (int tx = tx0; tx < tx1; tx++) {
+                int x0 = tx*tileWidth, x1 = Math.min(width, x0 + tileWidth);
+                int rowBytes = (x1 - x0)*pixelSize;
+                long h = 0xCBF29CE484222325L;
+                for (int y = y0; y < y1; y++) {
+                    int i = y*step + x0*pixelSize, end = i + rowBytes;
+                    for (; i + 8 <= end; i += 8) {
+                        h = (h ^ in.getLong(i)) * 0x9E3779B97F4A7C15L;
+                    }
+                    for (; i < end; i++) {
+                        h = (h ^ in.get(i)) * 0x100000001B3L;
+                    }
+                }
+                h ^= h >>> 32;
+                int t = ty*tilesX + tx;
+                if (!valid[t] || hashes[t] != h) {
+                    hashes[t] = h;
+                    valid[t] = true;
+                    changed[t] = true;
+                    counts[ty - ty0]++;
+                }
+            }
+        }}});
+        int count = 0;
+        for (int c : counts) {
+            count += c;
+        }
+        return count;
+    }
+}
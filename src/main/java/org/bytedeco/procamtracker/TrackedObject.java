@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+import org.bytedeco.javacv.CameraDevice;
+import org.bytedeco.javacv.GNImageAligner;
+import org.bytedeco.javacv.ProCamTransformer;
+import org.bytedeco.javacv.ProjectorDevice;
+import org.bytedeco.javacv.ReflectanceInitializer;
+
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * An additional object tracked by {@link TrackingEngine} along with its main one,
+ * with its own reflectance, plane parameters, transformer, aligner, and
+ * {@link RealityAugmentor}, which renders into its own projector image, to be
+ * composited with the others. Each frame, it runs as a task on a fork-join pool,
+ * iterating until it converges, or until the frame deadline.
+ *
+ * @author Samuel Audet
+ */
+class TrackedObject extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    TrackedObject(RealityAugmentor augmentor, double[] roiPts, IplImage projectorTemplate) {
+        this.augmentor = augmentor;
+        this.roiPts = roiPts;
+        this.projectorImage = IplImage.createCompatible(projectorTemplate);
+        cvSet(projectorImage, CvScalar.WHITE);
+    }
+
+    final RealityAugmentor augmentor;
+    final double[] roiPts;
+    /** What augmentor renders, and the region it last rendered in it. */
+    final IplImage projectorImage;
+    final CvRect roi = cvRect(0, 0, 0, 0);
+
+    IplImage reflectanceImage;
+    ProCamTransformer transformer;
+    ProCamTransformer.Parameters parameters, lastParameters, tempParameters;
+    // what augmentor renders, since compute() modifies lastParameters while it does
+    ProCamTransformer.Parameters augmentorParameters;
+    GNImageAligner aligner;
+    volatile boolean lost = false;
+    private int lostCount = 0;
+
+    // per frame settings and statistics
+    private IterationScheduler scheduler;
+    private int minLevel, pyramidLevelAudit;
+    private long timeMax, arrivalTime;
+    private double outlierRatioMax;
+    private double[] delta, iterationTime;
+    private int[] iterationCount, iterationsPerLevel;
+    private long iteratingTime;
+    private boolean started = false;
+
+    private static final Logger logger = Logger.getLogger(TrackedObject.class.getName());
+
+    /** Estimates the reflectance and plane parameters in the same images as the main object. */
+    void initialize(ReflectanceInitializer reflectanceInitializer, IplImage[] cameraInitFloatImages,
+            CameraDevice camera, ProjectorDevice projector, int gainAmbientLightLength) {
+        boolean surfaceHasTexture = augmentor.getObjectSettings().isSurfaceHasTexture();
+        double[] referencePoints = surfaceHasTexture ? roiPts : null;
+        double[] gainAmbientLight = new double[gainAmbientLightLength];
+        reflectanceImage = IplImage.createCompatible(cameraInitFloatImages[0]);
+        for (IplImage image : cameraInitFloatImages) {
+            cvResetImageROI(image);
+        }
+        reflectanceInitializer.initializeReflectance(cameraInitFloatImages, reflectanceImage,
+                roiPts, gainAmbientLight);
+        CvMat n0 = reflectanceInitializer.initializePlaneParameters(surfaceHasTexture ?
+                reflectanceImage : null, cameraInitFloatImages[2], referencePoints, roiPts, gainAmbientLight);
+
+        transformer = new ProCamTransformer(referencePoints, camera, projector, n0);
+        parameters = transformer.createParameters();
+        int gainAmbientLightStart = parameters.size() - gainAmbientLight.length;
+        for (int i = gainAmbientLightStart; i < parameters.size(); i++) {
+            parameters.set(i, gainAmbientLight[i-gainAmbientLightStart]);
+        }
+        lastParameters = parameters.clone();
+        tempParameters = parameters.clone();
+        augmentorParameters = parameters.clone();
+        lost = false;
+        lostCount = 0;
+    }
+
+    /** Creates the aligner, once the transformer has its projector image, and the target image exists. */
+    void createAligner(IplImage targetImage, GNImageAligner.Settings settings, IterationScheduler scheduler,
+            TrackingWorker.Settings trackingSettings) {
+        boolean surfaceHasTexture = augmentor.getObjectSettings().isSurfaceHasTexture();
+        aligner = new GNImageAligner(transformer, lastParameters, surfaceHasTexture ?
+                reflectanceImage : null, roiPts, targetImage, settings);
+        this.scheduler = scheduler;
+        int levels = settings.getPyramidLevelMax() + 1;
+        minLevel = settings.getPyramidLevelMin();
+        pyramidLevelAudit = trackingSettings.getPyramidLevelAudit();
+        timeMax = trackingSettings.getIteratingTimeMax()*1000000L;
+        outlierRatioMax = trackingSettings.getOutlierRatioMax();
+        delta = new double[parameters.size()+1];
+        iterationTime = new double[levels];
+        iterationCount = new int[levels];
+        iterationsPerLevel = new int[levels];
+    }
+
+    /** Starts on the pool to align the frame whose image got grabbed at the given time. */
+    void start(ForkJoinPool pool, long arrivalTime) {
+        this.arrivalTime = arrivalTime;
+        reinitialize();
+        started = true;
+        pool.execute(this);
+    }
+
+    /**
+     * Has augmentor render the last parameters, with a copy, once the task is finished
+     * and augmentor is done with the previous update.
+     */
+    void updateAugmentor() throws Exception {
+        augmentorParameters.set(lastParameters);
+        augmentor.update(projectorImage, roi, -1, -1, false, augmentorParameters);
+    }
+
+    /** Waits for the task to finish, if started, rethrowing any exception. */
+    void finish() {
+        if (started) {
+            started = false;
+            join();
+        }
+    }
+
+    /**
+     * Records the time the engine took between the end of its own iterations and the
+     * grab of the next frame, after joining, since this object needs to finish before.
+     */
+    void endFrame(long overheadTime) {
+        scheduler.endFrame(overheadTime);
+    }
+
+    @Override protected void compute() {
+        if (lost) {
+            return;
+        }
+        scheduler.startFrame(arrivalTime);
+        iteratingTime = 0;
+        Arrays.fill(iterationsPerLevel, 0);
+        boolean converged = false;
+        while (!converged) {
+            int p = aligner.getPyramidLevel();
+            int q = scheduler.nextLevel(p, minLevel, iterationTime,
+                    iterationCount, iterationsPerLevel, System.nanoTime());
+            if (q < 0) {
+                break;
+            } else if (q != p) {
+                aligner.setPyramidLevel(q);
+                p = q;
+            }
+            long iterationStartTime = System.nanoTime();
+            converged = aligner.iterate(delta);
+            long time = System.nanoTime() - iterationStartTime;
+            iteratingTime += time;
+            iterationsPerLevel[p]++;
+            iterationTime[p] += time;
+            if (timeMax > 0 && iteratingTime > timeMax) {
+                converged = true;
+            }
+        }
+        for (int i = 0; i < iterationsPerLevel.length; i++) {
+            iterationCount[i] += iterationsPerLevel[i];
+        }
+
+        // the same audit as for the main object
+        parameters = (ProCamTransformer.Parameters)aligner.getParameters();
+        int from = parameters.size() - transformer.getNumGains() - transformer.getNumBiases();
+        for (int i = from; i < parameters.size(); i++) {
+            double p = parameters.get(i);
+            if (p < 0 || p > 2) {
+                for (int j = from; j < parameters.size(); j++) {
+                    parameters.set(j, lastParameters.get(j));
+                }
+                aligner.setParameters(parameters);
+                break;
+            }
+        }
+        if (pyramidLevelAudit >= 0) {
+            if (aligner.getPyramidLevel() != pyramidLevelAudit) {
+                aligner.setPyramidLevel(pyramidLevelAudit);
+            }
+            double RMSE = aligner.getRMSE();
+            tempParameters.set(parameters);
+            aligner.setParameters(lastParameters);
+            if (RMSE < aligner.getRMSE()) {
+                aligner.setParameters(tempParameters);
+            }
+        }
+        if (outlierRatioMax > 0 && aligner.getOutlierCount() >= outlierRatioMax * aligner.getPixelCount()) {
+            if (++lostCount > 1) {
+                lost = true;
+                logger.warning("Lost track of " + augmentor.getObjectSettings().getName() +
+                        ", not tracking it until the next initialization.");
+                return;
+            }
+        } else {
+            lostCount = 0;
+        }
+        lastParameters.set(aligner.getParameters());
+    }
+
+    void release() throws InterruptedException {
+        if (started) {
+            started = false;
+            quietlyJoin();
+        }
+        augmentor.release();
+        projectorImage.release();
+        if (reflectanceImage != null) {
+            reflectanceImage.release();
+        }
+        roi.deallocate();
+    }
+}
@@ -0,0 +1,2141 @@
+/*
+ * Copyright (C) 2009,2010,2011,2012 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import com.jogamp.opencl.CLImage2d;
+import com.jogamp.opencl.CLImageFormat;
+import com.jogamp.opencl.CLImageFormat.ChannelType;
+import com.jogamp.opencl.gl.CLGLImage2d;
+import com.jogamp.opengl.GLContext;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.beans.XMLDecoder;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacv.BufferRing;
+import org.bytedeco.javacv.CameraDevice;
+import org.bytedeco.javacv.CanvasFrame;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameGrabber.ImageMode;
+import org.bytedeco.javacv.FrameRecorder;
+import org.bytedeco.javacv.GLCanvasFrame;
+import org.bytedeco.javacv.GNImageAligner;
+import org.bytedeco.javacv.GNImageAlignerCL;
+import org.bytedeco.javacv.HandMouse;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.JavaCV;
+import org.bytedeco.javacv.JavaCVCL;
+import org.bytedeco.javacv.MarkerDetector;
+import org.bytedeco.javacv.ObjectFinder;
+import org.bytedeco.javacv.ProCamTransformer;
+import org.bytedeco.javacv.ProCamTransformerCL;
+import org.bytedeco.javacv.ProjectiveDevice;
+import org.bytedeco.javacv.ProjectorDevice;
+import org.bytedeco.javacv.ReflectanceInitializer;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.javacv.Parallel;
+
+import org.bytedeco.ffmpeg.avutil.*;
+import org.bytedeco.opencv.opencv_core.*;
+import org.bytedeco.opencv.opencv_imgproc.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * The tracking pipeline of {@link TrackingWorker}, without any dependency on Swing.
+ * Frames come from {@link #createFrameGrabber()} and distorted projector images
+ * go to a {@link ProjectorSink}, either of which may be replaced, so that it can
+ * also run headless via {@link #main(String[])}.
+ *
+ * @author Samuel Audet
+ */
+public class TrackingEngine {
+
+    /** Receives the images to display on the projector. */
+    public interface ProjectorSink {
+        void showImage(IplImage image) throws Exception;
+        void waitLatency() throws Exception;
+        void dispose();
+    }
+
+    /** Displays projector images in a CanvasFrame, usually full screen. */
+    public static class CanvasFrameSink implements ProjectorSink {
+        public CanvasFrameSink(CanvasFrame canvasFrame) {
+            this(canvasFrame, 0);
+        }
+        /**
+         * @param gamma the gamma the CanvasFrame was created with, usually the response gamma
+         *              of the projector, with which 8-bit images get converted here instead,
+         *              and only within their dirty rectangle, or 0 to let CanvasFrame convert them
+         */
+        public CanvasFrameSink(CanvasFrame canvasFrame, double gamma) {
+            this.canvasFrame = canvasFrame;
+            if (gamma > 0) {
+                lut = new byte[256];
+                for (int i = 0; i < lut.length; i++) {
+                    lut[i] = (byte)Math.round(Math.pow(i/255.0, 1/gamma)*255);
+                }
+            }
+        }
+
+        private CanvasFrame canvasFrame;
+        private OpenCVFrameConverter.ToIplImage converter = new OpenCVFrameConverter.ToIplImage();
+        private byte[] lut = null;
+        // what the CanvasFrame displays, updated only where images change
+        private BufferedImage buffer = null;
+        private byte[] bufferData = null;
+
+        public CanvasFrame getCanvasFrame() {
+            return canvasFrame;
+        }
+
+        public void showImage(IplImage image) {
+            showImage(image, null);
+        }
+
+        /**
+         * Shows the image, whose pixels outside dirty, if not null, are the same
+         * as in the image shown last. Those do not get converted again, as long as
+         * the images are 8-bit with 1 or 3 channels, and we know the gamma.
+         */
+        public void showImage(IplImage image, CvRect dirty) {
+            int width = image.width(), height = image.height(), channels = image.nChannels();
+            if (lut == null || image.depth() != IPL_DEPTH_8U || (channels != 1 && channels != 3)) {
+                canvasFrame.showImage(converter.convert(image));
+                buffer = null;
+                return;
+            }
+            if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height
+                    || buffer.getRaster().getNumBands() != channels) {
+                buffer = new BufferedImage(width, height, channels == 1 ?
+                        BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+                bufferData = ((DataBufferByte)buffer.getRaster().getDataBuffer()).getData();
+                dirty = null;
+            }
+            int x0 = 0, y0 = 0, x1 = width, y1 = height;
+            if (dirty != null) {
+                x0 = Math.max(x0, dirty.x());
+                y0 = Math.max(y0, dirty.y());
+                x1 = Math.min(x1, dirty.x() + dirty.width());
+                y1 = Math.min(y1, dirty.y() + dirty.height());
+            }
+            ByteBuffer in = image.getByteBuffer();
+            int step = image.widthStep(), rowBytes = (x1 - x0)*channels;
+            for (int y = y0; y < y1 && rowBytes > 0; y++) {
+                int offset = (y*width + x0)*channels;
+                in.position(y*step + x0*channels);
+                in.get(bufferData, offset, rowBytes);
+                for (int i = offset; i < offset + rowBytes; i++) {
+                    bufferData[i] = lut[bufferData[i] & 0xFF];
+                }
+            }
+            canvasFrame.showImage(buffer);
+        }
+        public void waitLatency() throws Exception {
+            canvasFrame.waitLatency();
+        }
+        public void dispose() {
+            canvasFrame.dispose();
+        }
+    }
+
+    CameraDevice    .Settings cameraSettings;
+    ProjectorDevice .Settings projectorSettings;
+    ObjectFinder    .Settings objectFinderSettings;
+    MarkerDetector  .Settings markerDetectorSettings;
+    GNImageAligner  .Settings alignerSettings;
+    HandMouse       .Settings handMouseSettings;
+    VirtualBall     .Settings virtualBallSettings;
+    RealityAugmentor.Settings realityAugmentorSettings;
+    TrackingWorker  .Settings trackingSettings;
+
+    /** Identifies this engine among others in the same JVM, for example in MBean names, or null. */
+    String name = null;
+    /** Images and threads shared with other engines, see {@link TrackingSupervisor}, or null. */
+    SharedAssets sharedAssets = null;
+    ForkJoinPool sharedPool = null;
+
+    String[] monitorWindowsTitles = {
+        "Initial Alignment", "Transformed Object", "Camera Target",
+        "Residual Image", "Relative Residual", "HandMouse Image" };
+    CanvasFrame[] monitorWindows = null;
+    OpenCVFrameConverter.ToIplImage[] monitorConverters = null;
+
+    JavaCVCL contextCL = null;
+
+    CameraDevice cameraDevice = null;
+    FrameGrabber frameGrabber = null;
+    ProjectorDevice projectorDevice = null;
+    ProjectorSink projectorSink = null;
+    GLCanvasFrame projectorGLFrame = null;
+    OpenCVFrameConverter.ToIplImage grabberConverter = null;
+
+    private double[] roiPts = null, gainAmbientLight = null;
+    private CvMat n0 = null;
+    private InitializationCache initializationCache = null;
+    private ProCamTransformer transformer;
+    private ProCamTransformer.Parameters parameters, lastParameters, tempParameters,
+            initialParameters, goodParameters;
+    private boolean relocalizing = false;
+    private int relocalizations = 0;
+    // after tracking that many frames, relocalization is considered successful
+    private static final int RELOCALIZED_FRAMES_MIN = 30;
+    // frames after which the tracking loop is expected to have stopped allocating
+    private static final int WARMUP_FRAMES = 10;
+    // about half an hour at 30 fps
+    private static final int TELEMETRY_CAPACITY = 1 << 16;
+    private TelemetryRecorder telemetry = null;
+    private SessionRecorder sessionRecorder = null;
+    // the session record and the frame number of the image last grabbed by cameraStage
+    private long grabbedRecord = -1;
+    private volatile long grabbedFrameNumber = -1;
+    private GNImageAligner aligner;
+    private ReflectanceInitializer reflectanceInitializer;
+    private HandMouse handMouse = null;
+    private RealityAugmentor realityAugmentor = null;
+    // the objects tracked along with the one of realityAugmentor, on their own threads
+    private TrackedObject[] trackedObjects = new TrackedObject[0];
+    private ForkJoinPool trackingPool = null;
+    private HypothesisAuditor auditor = null;
+    private CvRect compositeRoi = new CvRect();
+
+    private IplImage[] projectorInitFloatImages, projectorInitImages,
+            cameraInitImages, cameraInitFloatImages, monitorImages;
+    private IplImage grabbedImage, undistortedCameraImage, distortedProjectorImage, reflectanceImage;
+    // on the CPU path, with 8-bit frames, the target of the aligners, in floating point
+    private IplImage undistortedCameraFloatImage;
+    // on the CPU path, the image cameraStage last undistorted into, for new aligners
+    private IplImage cameraTargetImage;
+    private CLImage2d grabbedImageCL, undistortedCameraImageCL, reflectanceImageCL,
+            cameraMapxCL, cameraMapyCL, projectorMapxCL, projectorMapyCL;
+    private CLGLImage2d distortedProjectorImageCL;
+    private CvRect roi = new CvRect(), uploadRoi = new CvRect();
+    private FrameRecorder frameRecorder = null;
+    private RecordingStage recordingStage = null;
+    private MonitorRenderer monitorRenderer = null;
+
+    class ProjectorBuffer implements BufferRing.ReleasableBuffer {
+        public ProjectorBuffer(IplImage template, boolean allocateCL) {
+            if (allocateCL) {
+                image = IplImage.createCompatible(template);
+                //image = contextCL.createPinnedIplImage(template.width(), template.height(), template.depth(), template.nChannels());
+                imageCL = contextCL.createCLImageFrom(image);
+                tiles = new TileChangeDetector(image.width(), image.height(), UPLOAD_TILE_WIDTH, UPLOAD_TILE_HEIGHT);
+            } else {
+                image = IplImage.createCompatible(template);
+                imageCL = null;
+                tiles = null;
+            }
+            roi = cvRect(0, 0, 0, 0);
+            objectRois = new CvRect[0];
+        }
+
+        public IplImage image;
+        public CLImage2d imageCL;
+        // the tiles of image as last uploaded to imageCL
+        public TileChangeDetector tiles;
+        public CvRect roi;
+        // where each tracked object was last composited in this buffer
+        public CvRect[] objectRois;
+
+        public void release() {
+            if (image != null) { image.release(); }
+            if (imageCL != null) { imageCL.release(); }
+            if (roi != null) { roi.deallocate(); }
+            for (CvRect r : objectRois) { r.deallocate(); }
+        }
+    }
+    private BufferRing<ProjectorBuffer> projectorBufferRing;
+    private static final int UPLOAD_TILE_WIDTH = 64, UPLOAD_TILE_HEIGHT = 32;
+    // upload statistics of the last projector image, and in total
+    private volatile int uploadedTiles = 0, skippedTiles = 0;
+    private volatile long uploadedBytes = 0, skippedBytes = 0;
+    private long totalUploadedBytes = 0, totalSkippedBytes = 0;
+
+    private static final Logger logger = Logger.getLogger(TrackingEngine.class.getName());
+
+    public static final int INITIALIZING = TrackingWorker.INITIALIZING, TRACKING = TrackingWorker.TRACKING;
+
+    private volatile boolean cancelled = false;
+    private volatile int progress = 0;
+    private volatile TrackingLatency latency = null;
+    private volatile long frameCount = 0;
+    private volatile long heapAllocatingFrames = 0, heapAllocatedBytes = 0;
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+    protected void setProgress(int progress) {
+        this.progress = progress;
+    }
+
+    /** Returns the number of frames tracked since this engine was created. */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the number of frames tracked since this engine was created that allocated
+     * on the heap of the tracking thread after warmup, including inside JavaCV, or 0 if
+     * the JVM cannot measure allocations.
+     */
+    public long getHeapAllocatingFrames() {
+        return heapAllocatingFrames;
+    }
+    /** Returns the bytes allocated on the heap by the frames of {@link #getHeapAllocatingFrames()}. */
+    public long getHeapAllocatedBytes() {
+        return heapAllocatedBytes;
+    }
+
+    /**
+     * Returns the corners of the region of interest of the main object, as tracked
+     * in undistorted camera pixels, or null if not tracking. Only consistent when
+     * called from {@link #frameTracked(long, int, double, long)}.
+     */
+    public double[] getTrackedRoiPts() {
+        return aligner == null ? null : aligner.getTransformedRoiPts();
+    }
+
+    /**
+     * Called on the tracking thread after tracking each frame, with the number the frame
+     * grabber gave to its image. Does nothing by default. Override to measure tracking
+     * against some ground truth, without allocating, as this adds to the time of the frame.
+     */
+    protected void frameTracked(long frameNumber, int iterations, double RMSE, long frameTime) { }
+
+    /** Returns the latency histograms of the current run, or null if not running. */
+    public TrackingLatency getLatency() {
+        return latency;
+    }
+
+    /**
+     * Called from {@link #run()} on the tracking thread. Override to supply frames from elsewhere.
+     * By default, replays the session file of the tracking settings, if any, or grabs from the camera.
+     */
+    protected FrameGrabber createFrameGrabber() throws Exception {
+        if (trackingSettings.replayFile != null) {
+            return new SessionGrabber(trackingSettings.replayFile);
+        }
+        return cameraDevice.createFrameGrabber();
+    }
+
+    /**
+     * Grabs the next frame, or the delayed one, and appends it as is to the session
+     * file, if any, with the index of the projector buffer it pairs with, or -1.
+     * All frames the engine uses must come from here, so that replays stay in sync.
+     */
+    private IplImage grabImage(boolean delayed, int projectorIndex) throws Exception {
+        IplImage image = grabberConverter.convert(delayed ? frameGrabber.getDelayedFrame() : frameGrabber.grab());
+        if (image != null && projectorIndex >= 0) {
+            grabbedFrameNumber = frameGrabber.getFrameNumber();
+        }
+        if (image != null && sessionRecorder != null) {
+            cvResetImageROI(image);
+            long record = sessionRecorder.record(image, System.nanoTime(),
+                    frameGrabber.getFrameNumber(), projectorIndex);
+            if (projectorIndex >= 0) {
+                grabbedRecord = record;
+            }
+        }
+        return image;
+    }
+
+    public void init() throws Exception {
+        if (cameraDevice == null) {
+            cameraDevice = new CameraDevice(cameraSettings);
+        } else {
+            cameraDevice.setSettings(cameraSettings);
+        }
+
+        projectorSettings.setUseOpenGL(trackingSettings.useOpenCL);
+        if (projectorDevice == null) {
+            projectorDevice = new ProjectorDevice(projectorSettings);
+            if (trackingSettings.useOpenCL) {
+                // OpenCL uses RGBA, not BGR, so we need to invert the colorMixingMatrix
+                CvMat X = projectorDevice.colorMixingMatrix;
+                double[] x = X.get();
+                X.put(x[8], x[7], x[6],
+                      x[5], x[4], x[3],
+                      x[2], x[1], x[0]);
+            }
+        } else {
+            projectorDevice.setSettings(projectorSettings);
+        }
+    }
+
+    private IplImage gammaImage = null;
+    private Buffer gammaBuffer = null;
+    // for the CPU path, with the bounding box of the tracked regions
+    private CameraRemapper cameraRemapper = null;
+    // also for the CPU path, with the regions of the projector buffers that changed
+    private ProjectorRemapper projectorRemapper = null;
+    private CvRect projectorDirtyRoi = cvRect(0, 0, 0, 0), distortedDirtyRoi = cvRect(0, 0, 0, 0);
+    private CvRect lastProjectorRoi = cvRect(0, 0, 0, 0);
+    private boolean lastProjectorRoiValid = false;
+    private CvRect trackedObjectRoi = new CvRect();
+    private double[] scaledRoiPts = new double[8];
+    private volatile long lastGrabTime = 0, lastUndistortTime = 0;
+    // when cameraStage last got an image from the frame grabber
+    private volatile long lastGrabEndTime = 0;
+
+    /** Grabs, linearizes and undistorts the camera frame to align with the given projector buffer. */
+    private PipelineStage<ProjectorBuffer, ProjectorBuffer> cameraStage =
+            new PipelineStage<ProjectorBuffer, ProjectorBuffer>("camera", 2) {
+    public ProjectorBuffer process(ProjectorBuffer pb) throws Exception {
+        final int maxLevel = alignerSettings.getPyramidLevelMax();
+
+        RealityAugmentor.VirtualSettings virtualSettings = realityAugmentor.getVirtualSettings();
+        if (aligner == null || (virtualSettings != null && virtualSettings.projectionType !=
+                RealityAugmentor.ProjectionType.FIXED)) {
+            if (trackingSettings.useOpenCL) {
+                ((ProCamTransformerCL)transformer).setProjectorImageCL(pb.imageCL, 0, maxLevel);
+            }
+            if (aligner == null || !trackingSettings.useOpenCL) {
+                // used during initialization, even for OpenCL
+                transformer.setProjectorImage(pb.image, 0, maxLevel);
+            }
+            for (TrackedObject o : trackedObjects) {
+                // the camera sees the light of all objects
+                o.transformer.setProjectorImage(pb.image, 0, maxLevel);
+            }
+            if (auditor != null) {
+                auditor.setProjectorImage(pb.image, maxLevel);
+            }
+        }
+
+        long grabTime = System.nanoTime();
+        int projectorIndex = projectorBufferRing.position()+1;
+        grabbedImage = grabImage(true, projectorIndex);
+        if (grabbedImage == null) {
+            grabbedImage = grabImage(false, projectorIndex);
+        }
+        long undistortTime = System.nanoTime();
+        lastGrabTime = undistortTime - grabTime;
+        lastGrabEndTime = undistortTime;
+        latency.grab.record(lastGrabTime);
+        if (grabbedImage != null) {
+            // gamma "uncorrection", linearization, fused with the undistortion if possible
+            double gamma = frameGrabber.getGamma();
+            boolean fused = gamma != 1.0 && cameraRemapper != null
+                    && cameraRemapper.isSupported(grabbedImage, undistortedCameraImage);
+            if (gamma != 1.0 && !fused) {
+                // the converter usually returns the same image, so reuse its buffer
+                if (gammaImage != grabbedImage) {
+                    gammaImage  = grabbedImage;
+                    gammaBuffer = grabbedImage.createBuffer();
+                }
+                Buffer buffer = gammaBuffer;
+                int depth = OpenCVFrameConverter.getFrameDepth(grabbedImage.depth());
+                int stride = grabbedImage.widthStep() * 8 / Math.abs(depth);
+                Java2DFrameConverter.applyGamma(buffer, depth, stride, gamma);
+            }
+            if (trackingSettings.useOpenCL) {
+                if (trackedRoi(grabbedImageCL.width, grabbedImageCL.height, 0, roi)) {
+                    cvSetImageROI(grabbedImage, roi);
+                } else {
+                    cvResetImageROI(grabbedImage);
+                }
+                contextCL.writeImage(grabbedImageCL, grabbedImage, false);
+                cvResetImageROI(grabbedImage);
+                contextCL.remap(grabbedImageCL, undistortedCameraImageCL,
+                        cameraMapxCL, cameraMapyCL, frameGrabber.getSensorPattern());
+//contextCL.readImage(undistortedCameraImageCL, cameraInitFloatImages[0], true);
+//monitorWindows[1].showImage(cameraInitFloatImages[0], true);
+                if (aligner != null) {
+                    ((GNImageAlignerCL)aligner).setTargetImageCL(undistortedCameraImageCL);
+                }
+            } else {
+                IplImage targetImage = undistortedCameraImage;
+                if (cameraRemapper != null) {
+                    // undistort only the tracked regions, like for OpenCL above, and if possible
+                    // straight to floating point, so the aligners do not need to convert it again
+                    if (undistortedCameraFloatImage != null &&
+                            cameraRemapper.isSupported(grabbedImage, undistortedCameraFloatImage)) {
+                        targetImage = undistortedCameraFloatImage;
+                    }
+                    cameraRemapper.setGamma(fused ? gamma : 1.0);
+                    trackedRoi(targetImage.width(), targetImage.height(),
+                            alignerSettings.getPyramidLevelMin(), roi);
+                    cameraRemapper.remap(grabbedImage, targetImage, roi);
+                } else {
+                    cameraDevice.undistort(grabbedImage, undistortedCameraImage);
+                }
+                cameraTargetImage = targetImage;
+                if (aligner != null) {
+                    aligner.setTargetImage(targetImage);
+                }
+                for (TrackedObject o : trackedObjects) {
+                    if (o.aligner != null) {
+                        o.aligner.setTargetImage(targetImage);
+                    }
+                }
+                if (auditor != null) {
+                    auditor.setTargetImage(targetImage);
+                }
+            }
+            lastUndistortTime = System.nanoTime() - undistortTime;
+            latency.undistort.record(lastUndistortTime);
+        }
+        return pb;
+    }};
+
+    /**
+     * Sets roi to the bounding box of the regions tracked in the last frame, by the aligner
+     * and for the other objects, padded by displacementMax, and aligned for the pyramid,
+     * within an image of the given size at the given pyramid level. Returns false, with
+     * roi covering the whole image, when there is nothing tracked yet or no padding.
+     */
+    private boolean trackedRoi(int width, int height, int pyramidLevel, CvRect roi) {
+        roi.x(0).y(0).width(width).height(height);
+        if (aligner == null || alignerSettings.getDisplacementMax() <= 0) {
+            return false;
+        }
+        int padX = (int)Math.round(alignerSettings.getDisplacementMax()*width);
+        int padY = (int)Math.round(alignerSettings.getDisplacementMax()*height);
+        int align = 1<<Math.max(0, alignerSettings.getPyramidLevelMax()+1-pyramidLevel);
+        double scale = 1.0/(1<<pyramidLevel);
+        // add +3 all around because pyrDown() needs it for smoothing
+        JavaCV.boundingRect(scaleRoiPts(aligner.getTransformedRoiPts(), scale), roi, padX+3, padY+3, align, align);
+        for (TrackedObject o : trackedObjects) {
+            if (o.aligner != null) {
+                trackedObjectRoi.x(0).y(0).width(width).height(height);
+                JavaCV.boundingRect(scaleRoiPts(o.aligner.getTransformedRoiPts(), scale),
+                        trackedObjectRoi, padX+3, padY+3, align, align);
+                union(roi, trackedObjectRoi);
+            }
+        }
+        // alignment may round up past the edges
+        roi.width (Math.min(roi.width(),  width  - roi.x()));
+        roi.height(Math.min(roi.height(), height - roi.y()));
+        return true;
+    }
+
+    private double[] scaleRoiPts(double[] pts, double scale) {
+        if (scale == 1.0) {
+            return pts;
+        }
+        if (scaledRoiPts.length != pts.length) {
+            scaledRoiPts = new double[pts.length];
+        }
+        for (int i = 0; i < pts.length; i++) {
+            scaledRoiPts[i] = pts[i]*scale;
+        }
+        return scaledRoiPts;
+    }
+
+    /** Distorts and shows the given projector buffer, and schedules the grab of the next camera frame. */
+    private PipelineStage<ProjectorBuffer, ProjectorBuffer> projectorStage =
+            new PipelineStage<ProjectorBuffer, ProjectorBuffer>("projector", 2) {
+    public ProjectorBuffer process(ProjectorBuffer pb) throws Exception {
+        CvRect maxroi = realityAugmentor.getUpdateRect();
+        latency.augmentUpdate.record(realityAugmentor.getUpdateTime());
+        if (trackedObjects.length > 0) {
+            maxroi = compositeTrackedObjects(pb, maxroi);
+        }
+        long showTime = System.nanoTime();
+        if (trackingSettings.useOpenCL) {
+            uploadProjectorBuffer(pb, maxroi);
+        }
+
+        if (projectorSink != null) {
+            if (trackingSettings.useOpenCL) {
+                // with OpenCL, we can only display via the OpenGL context we share
+                if (projectorGLFrame != null) {
+                    contextCL.acquireGLObject(distortedProjectorImageCL);
+                    contextCL.remap(pb.imageCL, distortedProjectorImageCL, projectorMapxCL, projectorMapyCL);
+                    contextCL.releaseGLObject(distortedProjectorImageCL);
+                    //contextCL.finish();
+                    projectorGLFrame.showImage(distortedProjectorImageCL.getGLObjectID());
+                }
+            } else {
+                CvRect dirty = null;
+                if (projectorRemapper != null) {
+                    if (maxroi != null && lastProjectorRoiValid) {
+                        // the projector still shows the last buffer, which may differ from this one within its own maxroi
+                        dirtyUnion(projectorDirtyRoi.x(maxroi.x()).y(maxroi.y())
+                                .width(maxroi.width()).height(maxroi.height()), lastProjectorRoi);
+                        dirty = projectorDirtyRoi.width() > 0 && projectorDirtyRoi.height() > 0 ?
+                                projectorRemapper.map(projectorDirtyRoi, distortedDirtyRoi) :
+                                distortedDirtyRoi.x(0).y(0).width(0).height(0);
+                    }
+                    projectorRemapper.distort(pb.image, distortedProjectorImage, dirty);
+                } else {
+                    cvResetImageROI(distortedProjectorImage);
+                    cvResetImageROI(pb.image);
+                    projectorDevice.distort(pb.image, distortedProjectorImage);
+                }
+                lastProjectorRoiValid = maxroi != null;
+                if (maxroi != null) {
+                    lastProjectorRoi.x(maxroi.x()).y(maxroi.y()).width(maxroi.width()).height(maxroi.height());
+                    cvSetImageROI(pb.image, maxroi);
+                    cvSetImageROI(distortedProjectorImage, maxroi);
+                }
+                showDistortedProjectorImage(dirty);
+            }
+        }
+        latency.projectorShow.record(System.nanoTime() - showTime);
+
+        if (aligner != null) {
+//System.out.println(frameGrabber.getDelayedTime());
+            long prevDelayedTime = frameGrabber.getDelayedTime();
+            frameGrabber.delayedGrab(trackingSettings.proCamPhaseShift * 1000);
+            if (prevDelayedTime > (trackingSettings.proCamPhaseShift +
+                    1000 / frameGrabber.getFrameRate()) * 1000) {
+                // wait for an additional vblank
+                if (trackingSettings.useOpenCL) {
+                    if (projectorGLFrame != null) {
+                        projectorGLFrame.showImage(distortedProjectorImageCL.getGLObjectID());
+                    }
+                } else if (projectorSink != null) {
+                    // nothing changed since
+                    showDistortedProjectorImage(distortedDirtyRoi.x(0).y(0).width(0).height(0));
+                }
+            }
+        }
+        return pb;
+    }};
+
+    /** Measures the latency between the projector and the camera, and sets trackingSettings to match. */
+    private void calibrateLatency() throws Exception {
+        if (projectorSink == null || frameGrabber instanceof SessionGrabber) {
+            logger.warning("Cannot calibrate latency without a projector and a live camera.");
+            return;
+        }
+        LatencyCalibrator calibrator = new LatencyCalibrator(projectorSink, frameGrabber,
+                projectorDevice.imageWidth, projectorDevice.imageHeight);
+        LatencyCalibrator.Result r = calibrator.calibrate();
+        if (r != null) {
+            logger.info("latencyCalibration: " + r);
+            trackingSettings.setProjectorBufferingSize(r.getProjectorBufferingSize());
+            trackingSettings.setProCamPhaseShift(r.getProCamPhaseShift());
+            trackingSettings.setCalibrateLatency(false);
+        }
+    }
+
+    /** Shows distortedProjectorImage, converting for display only the pixels within dirty, if not null and supported. */
+    private void showDistortedProjectorImage(CvRect dirty) throws Exception {
+        if (dirty != null && projectorSink instanceof CanvasFrameSink) {
+            ((CanvasFrameSink)projectorSink).showImage(distortedProjectorImage, dirty);
+        } else {
+            projectorSink.showImage(distortedProjectorImage);
+        }
+    }
+
+    /**
+     * Uploads to pb.imageCL only the tiles of pb.image within maxroi, or anywhere
+     * if null, that changed since they were last uploaded to it, merging adjacent
+     * ones of the same row into a single write, and updates the upload statistics.
+     */
+    private void uploadProjectorBuffer(ProjectorBuffer pb, CvRect maxroi) {
+        TileChangeDetector tiles = pb.tiles;
+        int pixelSize = pb.image.nChannels()*Math.abs(pb.image.depth())/8;
+        int changed = tiles.update(pb.image, maxroi);
+        int tx0 = maxroi == null ? 0 : Math.max(0, maxroi.x()/tiles.tileWidth);
+        int ty0 = maxroi == null ? 0 : Math.max(0, maxroi.y()/tiles.tileHeight);
+        int tx1 = maxroi == null ? tiles.tilesX : Math.min(tiles.tilesX,
+                (maxroi.x() + maxroi.width()  + tiles.tileWidth  - 1)/tiles.tileWidth);
+        int ty1 = maxroi == null ? tiles.tilesY : Math.min(tiles.tilesY,
+                (maxroi.y() + maxroi.height() + tiles.tileHeight - 1)/tiles.tileHeight);
+        int tileCount = maxroi != null && (maxroi.width() <= 0 || maxroi.height() <= 0) ? 0 :
+                Math.max(0, tx1 - tx0)*Math.max(0, ty1 - ty0);
+        long candidateBytes = tileCount == 0 ? 0 : (long)pixelSize *
+                (Math.min(tiles.width,  tx1*tiles.tileWidth)  - tx0*tiles.tileWidth) *
+                (Math.min(tiles.height, ty1*tiles.tileHeight) - ty0*tiles.tileHeight);
+        int written = 0;
+        long bytes = 0;
+        for (int ty = ty0; ty < ty1 && written < changed; ty++) {
+            int y = ty*tiles.tileHeight, h = Math.min(tiles.height, y + tiles.tileHeight) - y;
+            for (int tx = tx0; tx < tx1; tx++) {
+                if (!tiles.isChanged(tx, ty)) {
+                    continue;
+                }
+                int end = tx + 1;
+                while (end < tx1 && tiles.isChanged(end, ty)) {
+                    end++;
+                }
+                int x = tx*tiles.tileWidth, w = Math.min(tiles.width, end*tiles.tileWidth) - x;
+                cvSetImageROI(pb.image, uploadRoi.x(x).y(y).width(w).height(h));
+                contextCL.writeImage(pb.imageCL, pb.image, false);
+                written += end - tx;
+                bytes += (long)w*h*pixelSize;
+                tx = end;
+            }
+        }
+        if (maxroi != null) {
+            cvSetImageROI(pb.image, maxroi);
+        } else {
+            cvResetImageROI(pb.image);
+        }
+        uploadedTiles = written;
+        skippedTiles  = tileCount - written;
+        uploadedBytes = bytes;
+        skippedBytes  = candidateBytes - bytes;
+        totalUploadedBytes += bytes;
+        totalSkippedBytes  += candidateBytes - bytes;
+    }
+
+    /** Returns the number of tiles of the last projector image uploaded to OpenCL, as they changed. */
+    public int getUploadedTiles() {
+        return uploadedTiles;
+    }
+    /** Returns the number of tiles of the last projector image not uploaded to OpenCL, as they did not change. */
+    public int getSkippedTiles() {
+        return skippedTiles;
+    }
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /** Like union(), but ignoring empty rectangles. */
+    private static void dirtyUnion(CvRect a, CvRect b) {
+        if (b.width() <= 0 || b.height() <= 0) {
+            return;
+        } else if (a.width() <= 0 || a.height() <= 0) {
+            a.x(b.x()).y(b.y()).width(b.width()).height(b.height());
+        } else {
+            union(a, b);
+        }
+    }
+
+    private static void union(CvRect a, CvRect b) {
+        int x = Math.min(a.x(), b.x()), y = Math.min(a.y(), b.y());
+        a.width (Math.max(a.x() + a.width(),  b.x() + b.width())  - x).x(x);
+        a.height(Math.max(a.y() + a.height(), b.y() + b.height()) - y).y(y);
+    }
+
+    /**
+     * Erases from the buffer the tracked objects as last composited in it, and copies
+     * over what they rendered since, assuming they do not overlap in the projector.
+     *
+     * @return maxroi enlarged to cover the objects, or null for the whole image
+     */
+    private CvRect compositeTrackedObjects(ProjectorBuffer pb, CvRect maxroi) throws Exception {
+        if (pb.objectRois.length != trackedObjects.length) {
+            for (CvRect r : pb.objectRois) {
+                r.deallocate();
+            }
+            pb.objectRois = new CvRect[trackedObjects.length];
+            for (int i = 0; i < pb.objectRois.length; i++) {
+                pb.objectRois[i] = cvRect(0, 0, 0, 0);
+            }
+        }
+        if (maxroi != null) {
+            compositeRoi.x(maxroi.x()).y(maxroi.y()).width(maxroi.width()).height(maxroi.height());
+        }
+        for (int i = 0; i < trackedObjects.length; i++) {
+            TrackedObject o = trackedObjects[i];
+            CvRect r = pb.objectRois[i];
+            if (r.width() > 0 && r.height() > 0) {
+                cvSetImageROI(pb.image, r);
+                cvSet(pb.image, CvScalar.WHITE);
+                union(compositeRoi, r);
+            }
+            CvRect updateRect = o.lost ? null : o.augmentor.getUpdateRect();
+            RealityAugmentor.VirtualSettings virtualSettings = o.augmentor.getVirtualSettings();
+            if (updateRect != null && virtualSettings != null && virtualSettings.projectionType ==
+                    RealityAugmentor.ProjectionType.TRACKED) {
+                r.x(o.roi.x()).y(o.roi.y()).width(o.roi.width()).height(o.roi.height());
+                cvSetImageROI(o.projectorImage, r);
+                cvSetImageROI(pb.image, r);
+                cvCopy(o.projectorImage, pb.image);
+                cvResetImageROI(o.projectorImage);
+                union(compositeRoi, r);
+            } else {
+                r.width(0).height(0);
+            }
+            cvResetImageROI(pb.image);
+        }
+        return maxroi == null ? null : compositeRoi;
+    }
+
+    /** Finds with their own RealityAugmentor the objects other than the one selected by realityAugmentor. */
+    private void acquireTrackedObjects(IplImage cameraImage) throws Exception {
+        releaseTrackedObjects();
+        ArrayList<TrackedObject> objects = new ArrayList<TrackedObject>();
+        for (RealityAugmentor.ObjectSettings os : realityAugmentorSettings.toArray()) {
+            if (os == realityAugmentor.getObjectSettings()) {
+                continue;
+            }
+            RealityAugmentor augmentor = new RealityAugmentor(realityAugmentorSettings,
+                    objectFinderSettings, markerDetectorSettings, virtualBallSettings,
+                    cameraDevice, projectorDevice, cameraImage.nChannels());
+            augmentor.setSharedAssets(sharedAssets);
+            // the stages of each object need their own MBean names
+            augmentor.setPairName(name == null ? os.getName() : name + " " + os.getName());
+            double[] pts = augmentor.acquireRoi(monitorWindows == null ? null : monitorWindows[0],
+                    trackingSettings.getMonitorWindowsScale(), cameraImage, 0, os);
+            if (pts == null) {
+                logger.info("could not find " + os.getName() + ", not tracking it");
+                augmentor.release();
+            } else {
+                objects.add(new TrackedObject(augmentor, pts, distortedProjectorImage));
+            }
+        }
+        trackedObjects = objects.toArray(new TrackedObject[objects.size()]);
+    }
+
+    private void joinTrackedObjects() {
+        for (TrackedObject o : trackedObjects) {
+            o.finish();
+        }
+    }
+
+    private void releaseTrackedObjects() throws InterruptedException {
+        for (TrackedObject o : trackedObjects) {
+            o.release();
+        }
+        trackedObjects = new TrackedObject[0];
+    }
+
+    /** Waits for the monitor windows to get their last images, before the recorder or the windows go away. */
+    private void stopMonitorRenderer() throws InterruptedException {
+        if (monitorRenderer != null) {
+            monitorRenderer.stop();
+            if (monitorRenderer.getRenderedCount() > 0) {
+                logger.info("monitorRendering shown " + monitorRenderer.getRenderedCount() +
+                        " snapshots, dropped " + monitorRenderer.getDroppedCount());
+            }
+            monitorRenderer = null;
+        }
+    }
+
+    private boolean haveMonitorWindows() {
+        if (monitorWindows != null) {
+            for (CanvasFrame w : monitorWindows) {
+                if (w.isVisible()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private IplImage getMonitorImage(IplImage floatImage, IplImage maskImage, int pyramidLevel) {
+        if (monitorImages[pyramidLevel] == null) {
+            monitorImages[pyramidLevel] = IplImage.create(floatImage.width(), floatImage.height(), IPL_DEPTH_8U, 3);
+        }
+        convertMonitorImage(floatImage, maskImage, monitorImages[pyramidLevel]);
+        return monitorImages[pyramidLevel];
+    }
+
+    /**
+     * Converts a float image to 8-bit BGR for display, in black where maskImage is 0.
+     * Rows get converted in parallel, with absolute indices that respect widthStep.
+     */
+    static void convertMonitorImage(IplImage floatImage, IplImage maskImage, IplImage monitorImage) {
+        final int inChannels  = floatImage.nChannels();
+        final int outChannels = monitorImage.nChannels();
+        // RGBA floats come from OpenCL, and get displayed as BGR
+        final boolean reverse = inChannels != 3;
+        final int width  = Math.min(floatImage.width(),  monitorImage.width());
+        final int height = Math.min(floatImage.height(), monitorImage.height());
+        final int inStep   = floatImage.widthStep()/4;
+        final int outStep  = monitorImage.widthStep();
+        final int maskStep = maskImage == null ? 0 : maskImage.widthStep();
+
+        final FloatBuffer in  = floatImage.getFloatBuffer();
+        final ByteBuffer mask = maskImage == null ? null : maskImage.getByteBuffer();
+        final ByteBuffer out  = monitorImage.getByteBuffer();
+        Parallel.loop(0, height, new Parallel.Looper() {
+        public void loop(int from, int to, int looperID) {
+        for (int y = from; y < to; y++) {
+            int inPixel = y*inStep, outPixel = y*outStep, maskPixel = y*maskStep;
+            for (int x = 0; x < width; x++, inPixel += inChannels, outPixel += outChannels, maskPixel++) {
+                if (mask != null && mask.get(maskPixel) == 0) {
+                    for (int z = 0; z < outChannels; z++) {
+                        out.put(outPixel + z, (byte)0);
+                    }
+                    continue;
+                }
+                for (int z = 0; z < outChannels; z++) {
+                    int c = reverse ? 2 - z : z;
+                    float v = c < inChannels ? Math.abs(in.get(inPixel + c)) : 0;
+                    // same as Math.round() for values in [0, 255]
+                    out.put(outPixel + z, (byte)(v >= 1 ? 255 : (int)(v*255 + 0.5f)));
+                }
+            }
+        }}});
+    }
+
+    /** Initializes the reflectance and plane parameters, from the cache if possible, and the transformer. */
+    private boolean initializeTracking() throws Exception {
+        setProgress(INITIALIZING);
+        frameGrabber.setImageMode(ImageMode.COLOR);
+
+        // use the cache only on the first initialization, the scene may have changed since
+        InitializationCache cache = initializationCache;
+        initializationCache = null;
+        boolean cached = false;
+        if (cache != null) {
+            try {
+                cached = cache.read(reflectanceImage);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read initialization from " + cache.getFile() + ".", e);
+            }
+        }
+        if (cached && realityAugmentor.restoreRoi(cache.getObjectIndex(), cache.getRoiPts()) != null) {
+            // nothing changed since the last run, so skip the projection of the patterns
+            logger.info("reading initialization from " + cache.getFile() + "...");
+            roiPts = cache.getRoiPts();
+            gainAmbientLight = cache.getGainAmbientLight();
+            n0 = cache.getN0();
+            if (trackingSettings.useOpenCL) {
+                contextCL.writeImage(reflectanceImageCL, reflectanceImage, false);
+            }
+        } else {
+            if (!initializeReflectance()) {
+                return false;
+            }
+            if (cache != null) {
+                // failing only costs the next run the patterns, for example on Windows,
+                // where a file still mapped by read() after a miss cannot be resized
+                try {
+                    cache.write(reflectanceImage, realityAugmentor.getObjectIndex(), roiPts, n0, gainAmbientLight);
+                    logger.info("wrote initialization to " + cache.getFile());
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not write initialization to " + cache.getFile() + ".", e);
+                }
+            }
+        }
+        final RealityAugmentor.ObjectSettings objectSettings = realityAugmentor.getObjectSettings();
+        final boolean surfaceHasTexture = objectSettings != null && objectSettings.isSurfaceHasTexture();
+        final double[] referencePoints = surfaceHasTexture ? roiPts : null;
+
+        // create our image transformer and its initial parameters
+        transformer = trackingSettings.useOpenCL ?
+                new ProCamTransformerCL(contextCL, referencePoints, cameraDevice, projectorDevice, n0) :
+                new ProCamTransformer(referencePoints, cameraDevice, projectorDevice, n0);
+        parameters = transformer.createParameters();
+        final int gainAmbientLightStart = parameters.size() - gainAmbientLight.length;
+        final int gainAmbientLightEnd   = parameters.size();
+        for (int i = gainAmbientLightStart; i < gainAmbientLightEnd; i++) {
+            parameters.set(i, gainAmbientLight[i-gainAmbientLightStart]);
+        }
+        lastParameters = parameters.clone();
+        tempParameters = parameters.clone();
+        initialParameters = parameters.clone();
+        goodParameters = parameters.clone();
+        return true;
+    }
+
+    /** Projects the three patterns, acquires the ROI, and estimates the reflectance and plane parameters. */
+    private boolean initializeReflectance() throws Exception {
+        final int minLevel = alignerSettings.getPyramidLevelMin();
+
+        // grab the three camera frames for initialization
+        for (int i = 0; i < projectorInitImages.length; i++) {
+            if (projectorSink != null) {
+                cvResetImageROI(projectorInitImages[i]);
+                projectorSink.showImage(projectorInitImages[i]);
+                projectorSink.waitLatency();
+            }
+            frameGrabber.flush();
+            grabbedImage = grabImage(false, -1);
+            cvResetImageROI(cameraInitImages[i]);
+            if (grabbedImage.nChannels() == 3 && cameraInitImages[i].nChannels() == 4) {
+                cvCvtColor(grabbedImage, cameraInitImages[i], CV_BGR2RGBA);
+            } else if (grabbedImage.nChannels() == 4 && cameraInitImages[i].nChannels() == 3) {
+                cvCvtColor(grabbedImage, cameraInitImages[i], CV_RGBA2BGR);
+            } else {
+                cvCopy(grabbedImage, cameraInitImages[i]);
+            }
+        }
+
+        // gamma "uncorrection", linearization
+        for (int i = 0; i < cameraInitImages.length; i++) {
+            double gamma = frameGrabber.getGamma();
+            if (gamma != 1.0) {
+                Buffer buffer = cameraInitImages[i].createBuffer();
+                int depth = OpenCVFrameConverter.getFrameDepth(cameraInitImages[i].depth());
+                int stride = cameraInitImages[i].widthStep() * 8 / Math.abs(depth);
+                Java2DFrameConverter.applyGamma(buffer, depth, stride, gamma);
+            }
+        }
+
+        // acquire the ROI
+        cameraDevice.setMapsPyramidLevel(0);
+        IplImage cameraTempInit = cameraDevice.undistort(cameraInitImages[1]);
+        if (monitorWindows != null) {
+            boolean flipChannels = cameraTempInit.nChannels() == 4;
+            monitorWindows[0].showImage(monitorConverters[0].convert(cameraTempInit), flipChannels);
+        }
+        roiPts = realityAugmentor.acquireRoi(monitorWindows == null ? null : monitorWindows[0],
+                trackingSettings.getMonitorWindowsScale(), cameraTempInit, 0);
+        if (roiPts == null) {
+            //throw new Exception("Error: Could not acquire the ROI.");
+            return false;
+        }
+        if (trackingPool != null && trackingSettings.trackMultipleObjects) {
+            acquireTrackedObjects(cameraTempInit);
+        }
+        final RealityAugmentor.ObjectSettings objectSettings = realityAugmentor.getObjectSettings();
+        final boolean surfaceHasTexture = objectSettings != null && objectSettings.isSurfaceHasTexture();
+        final double[] referencePoints = surfaceHasTexture ? roiPts : null;
+
+        // distortion removal and floating-point conversion for initialization
+        cameraDevice.setMapsPyramidLevel(minLevel);
+        cvResetImageROI(undistortedCameraImage);
+        for (int i = 0; i < cameraInitImages.length; i++) {
+            cameraDevice.undistort(cameraInitImages[i], undistortedCameraImage);
+            cvResetImageROI(cameraInitFloatImages[i]);
+            cvConvertScale(undistortedCameraImage, cameraInitFloatImages[i],
+                    1.0/undistortedCameraImage.highValue(), 0);
+
+//            IplImage monitorImage = getMonitorImage(cameraInitFloatImages[i], null, minLevel);
+//            CanvasFrame.global.showImage(monitorImage);
+//            CanvasFrame.global.waitKey();
+
+            if (recordingStage != null) {
+                recordingStage.record(undistortedCameraImage);
+            }
+        }
+
+        // extract the surface reflectance image along with its geometric plane parameters
+        gainAmbientLight = new double[cameraInitFloatImages[0].nChannels() > 1 ? 4 : 2];
+        cvResetImageROI(reflectanceImage);
+        reflectanceInitializer.initializeReflectance(cameraInitFloatImages, reflectanceImage,
+                roiPts, gainAmbientLight);
+        if (trackingSettings.useOpenCL) {
+            contextCL.writeImage(reflectanceImageCL, reflectanceImage, false);
+        }
+        String infoLogString = "initial a = (";
+        for (int i = 1; i < gainAmbientLight.length; i++) {
+            infoLogString += Float.toString((float)gainAmbientLight[i]);
+            if (i < gainAmbientLight.length-1) {
+                infoLogString += ", ";
+            }
+        }
+        logger.info(infoLogString + ")");
+        logger.info("initializing plane parameters...");
+        n0 = reflectanceInitializer.initializePlaneParameters(surfaceHasTexture ?
+                reflectanceImage : null, cameraInitFloatImages[2], referencePoints, roiPts, gainAmbientLight);
+        logger.info("initial n = " + (n0 == null ? null : n0.toString(12)));
+        for (TrackedObject o : trackedObjects) {
+            o.initialize(reflectanceInitializer, cameraInitFloatImages,
+                    cameraDevice, projectorDevice, gainAmbientLight.length);
+        }
+        if (trackedObjects.length > 0) {
+            logger.info("tracking " + trackedObjects.length + " more objects");
+        }
+        return true;
+    }
+
+    /**
+     * Searches at the coarsest pyramid level for the parameters that best explain the
+     * current frame, among the last good ones shifted over a grid, and the initial ones.
+     */
+    private void relocalize() {
+        aligner.setPyramidLevel(alignerSettings.getPyramidLevelMax());
+        ProCamTransformer.Parameters best = goodParameters.clone();
+        aligner.setParameters(best);
+        double bestRMSE = aligner.getRMSE();
+
+        aligner.setParameters(initialParameters);
+        double RMSE = aligner.getRMSE();
+        if (RMSE < bestRMSE || Double.isNaN(bestRMSE)) {
+            best.set(initialParameters);
+            bestRMSE = RMSE;
+        }
+
+        // the surface parameters are the transformed corners of the ROI
+        if (goodParameters.getSurfaceParameters().size() == 8) {
+            double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                minX = Math.min(minX, goodParameters.get(2*i    ));
+                maxX = Math.max(maxX, goodParameters.get(2*i    ));
+                minY = Math.min(minY, goodParameters.get(2*i + 1));
+                maxY = Math.max(maxY, goodParameters.get(2*i + 1));
+            }
+            for (int j = -2; j <= 2; j++) {
+                for (int i = -2; i <= 2; i++) {
+                    if (i == 0 && j == 0) {
+                        continue;
+                    }
+                    double dx = i*(maxX - minX)/4, dy = j*(maxY - minY)/4;
+                    tempParameters.set(goodParameters);
+                    for (int k = 0; k < 4; k++) {
+                        tempParameters.set(2*k,     goodParameters.get(2*k    ) + dx);
+                        tempParameters.set(2*k + 1, goodParameters.get(2*k + 1) + dy);
+                    }
+                    aligner.setParameters(tempParameters);
+                    RMSE = aligner.getRMSE();
+                    if (RMSE < bestRMSE) {
+                        best.set(tempParameters);
+                        bestRMSE = RMSE;
+                    }
+                }
+            }
+        }
+        aligner.setParameters(best);
+        logger.info("relocalized with RMSE = " + (float)bestRMSE);
+    }
+
+    private boolean doTracking() throws Exception {
+        final int minLevel = alignerSettings.getPyramidLevelMin();
+        final int maxLevel = alignerSettings.getPyramidLevelMax();
+
+        final boolean relocalize = relocalizing && initialParameters != null;
+        relocalizing = false;
+        if (relocalize) {
+            // keep the reflectance, plane and gains, and only search again for the object
+            logger.info("relocalizing...");
+            parameters.set(goodParameters);
+            lastParameters.set(goodParameters);
+        } else if (!initializeTracking()) {
+            return false;
+        }
+        final RealityAugmentor.ObjectSettings objectSettings = realityAugmentor.getObjectSettings();
+        final boolean surfaceHasTexture = objectSettings != null && objectSettings.isSurfaceHasTexture();
+        String infoLogString;
+
+        setProgress(TRACKING);
+        if (trackingSettings.useOpenCL && frameGrabber.getSensorPattern() != -1L) {
+            frameGrabber.setImageMode(ImageMode.RAW);
+        }
+
+        if (objectSettings != null && objectSettings.roiAcquisitionMethod ==
+                RealityAugmentor.RoiAcquisitionMethod.MARKER_DETECTOR) {
+            logger.info("\niteratingTime  iterations  objectiveRMSE  markerErrors  markerErrorsRunningAverage\n" +
+                          "----------------------------------------------------------------------------------");
+        } else {
+            logger.info("\niteratingTime  iterations  objectiveRMSE\n" +
+                          "----------------------------------------");
+        }
+
+        // compute initial projector image and fill the projector buffer ring
+        aligner = null;
+        projectorBufferRing.position(0);
+        ProjectorBuffer pb0 = projectorBufferRing.get();
+        pb0.roi.x(0).y(0).width(pb0.image.width()).height(pb0.image.height());
+        realityAugmentor.update(pb0.image, pb0.roi, -1, -1, false, parameters);
+        realityAugmentor.getUpdateRect();
+        for (TrackedObject o : trackedObjects) {
+            o.roi.x(0).y(0).width(o.projectorImage.width()).height(o.projectorImage.height());
+            o.updateAugmentor();
+        }
+        cvResetImageROI(pb0.image);
+        if (trackingSettings.useOpenCL) {
+            pb0.tiles.invalidate();
+            uploadProjectorBuffer(pb0, null);
+        }
+        for (int i = 1; i < projectorBufferRing.capacity(); i++) {
+            ProjectorBuffer pb = projectorBufferRing.get(i);
+            pb.roi.x(0).y(0).width(pb.image.width()).height(pb.image.height());
+            cvResetImageROI(pb.image);
+            cvCopy(pb0.image, pb.image);
+            if (trackingSettings.useOpenCL) {
+                pb.tiles.invalidate();
+                uploadProjectorBuffer(pb, null);
+            }
+        }
+        projectorStage.process(projectorBufferRing.get(-1));
+        if (projectorSink != null) {
+            projectorSink.waitLatency();
+        }
+        frameGrabber.flush();
+        cameraStage.process(projectorBufferRing.get(1));
+
+        // show our target alignment in the first monitor frame
+        if (monitorWindows != null) {
+            transformer.transform(reflectanceImage, cameraInitFloatImages[0], null, minLevel, parameters, false);
+            IplImage monitorImage = getMonitorImage(cameraInitFloatImages[0], null, minLevel);
+            monitorWindows[0].showImage(monitorConverters[0].convert(monitorImage));
+        }
+
+        // perform tracking via iterative minimization
+        aligner = trackingSettings.useOpenCL ? 
+                new GNImageAlignerCL((ProCamTransformerCL)transformer, parameters, surfaceHasTexture ?
+                        reflectanceImageCL : null, roiPts, undistortedCameraImageCL, alignerSettings) :
+                new GNImageAligner(transformer, parameters, surfaceHasTexture ?
+                        reflectanceImage : null, roiPts, cameraTargetImage, alignerSettings);
+        if (relocalize) {
+            relocalize();
+        }
+        // score the hypotheses of the audit on their own aligners, in parallel
+        auditor = null;
+        ProCamTransformer.Parameters[] hypotheses = null;
+        if (trackingSettings.parallelAudit && trackingSettings.pyramidLevelAudit >= 0
+                && trackingPool != null && !trackingSettings.useOpenCL) {
+            auditor = new HypothesisAuditor(trackingSettings.useMotionPrediction ? 3 : 2,
+                    trackingSettings.pyramidLevelAudit, trackingPool, surfaceHasTexture ? roiPts : null,
+                    cameraDevice, projectorDevice, n0, parameters, surfaceHasTexture ? reflectanceImage : null,
+                    roiPts, projectorBufferRing.get(1).image, cameraTargetImage, alignerSettings);
+            hypotheses = new ProCamTransformer.Parameters[auditor.getCount()];
+        }
+
+        long timeMax = trackingSettings.getIteratingTimeMax()*1000000;
+        // stop iterating in time for the next camera frame
+        IterationScheduler scheduler = new IterationScheduler(trackingSettings.useFrameDeadline ?
+                frameGrabber.getFrameRate() : 0, trackingSettings.frameDeadlineMargin*1000000L);
+        for (TrackedObject o : trackedObjects) {
+            o.createAligner(cameraTargetImage, alignerSettings, new IterationScheduler(
+                    trackingSettings.useFrameDeadline ? frameGrabber.getFrameRate() : 0,
+                    trackingSettings.frameDeadlineMargin*1000000L), trackingSettings);
+        }
+        // start iterating from where the object is likely to be in the new frame
+        MotionPredictor predictor = trackingSettings.useMotionPrediction ? new MotionPredictor(0.5) : null;
+        final int predictedEnd = parameters.size() - transformer.getNumGains() - transformer.getNumBiases();
+        int predictedCount = 0;
+        double predictedRMSEGain = 0;
+        double[] delta = new double[parameters.size()+1];
+//        int searchLength = alignerSettings.getLineSearch().length;
+//        long[][] iterationTime = new long[maxLevel+1][searchLength];
+//        int[][] iterationCount = new int [maxLevel+1][searchLength];
+        double[] iterationTime   = new double[maxLevel+1];
+        double[] iterationTime2  = new double[maxLevel+1];
+        int[] iterationCount  = new int[maxLevel+1];
+        int[] iterationCount2 = new int[maxLevel+1];
+        double totalIteratingTime2  = 0;
+        int    totalIterationCount2 = 0;
+        double totalAuditTime     = 0, totalAuditTime2     = 0;
+        double totalHandMouseTime = 0, totalHandMouseTime2 = 0;
+        double totalUpdateTime    = 0, totalUpdateTime2    = 0;
+        double totalTime          = 0, totalTime2          = 0;
+        int framesCount = 0;
+        int lostCount = 0;
+        totalUploadedBytes = totalSkippedBytes = 0;
+        // nothing below should allocate on the heap, once warmed up, unless monitoring
+        int[] iterationsPerLevel = new int[maxLevel+1];
+        long[] iteratingTimePerLevel = new long[maxLevel+1];
+        StringBuilder frameLog = new StringBuilder(256);
+        boolean logFrames = logger.isLoggable(Level.INFO);
+        long frameLogInterval = trackingSettings.frameLogInterval*1000000L, lastFrameLogTime = 0;
+        long[] stageTimes = new long[TelemetryRecorder.STAGE_NAMES.length];
+        if (trackingSettings.telemetryFile != null && telemetry == null) {
+            telemetry = new TelemetryRecorder(trackingSettings.telemetryFile,
+                    TELEMETRY_CAPACITY, maxLevel+1, parameters.size());
+        }
+        long allocatedBytes = TrackingLatency.getAllocatedBytes(), totalAllocatedBytes = 0;
+        int allocatingFrames = 0;
+        if (monitorWindows != null) {
+            // the renderer undistorts at full resolution on its own, for the marker detector
+            cameraDevice.setMapsPyramidLevel(0);
+            IplImage undistortMap1 = cameraDevice.getUndistortMap1().clone();
+            IplImage undistortMap2 = cameraDevice.getUndistortMap2().clone();
+            cameraDevice.setMapsPyramidLevel(minLevel);
+            monitorRenderer = new MonitorRenderer(monitorWindows, trackingSettings.monitorWindowsFrameRate,
+                    undistortMap1, undistortMap2);
+            monitorRenderer.start();
+        }
+        // the projector may have shown something else since the last buffer
+        lastProjectorRoiValid = false;
+        while (!isCancelled() && grabbedImage != null && !Double.isNaN(aligner.getRMSE())) {
+            long startTime = System.nanoTime(), arrivalTime = lastGrabEndTime;
+            long sessionRecord = grabbedRecord, trackedFrameNumber = grabbedFrameNumber;
+            framesCount++;
+            boolean predicted = false;
+            tempParameters.set(lastParameters);
+            if (predictor != null && predictor.predict(tempParameters)) {
+                // keep the prediction only if it fits the new frame better
+                double lastRMSE = aligner.getRMSE();
+                aligner.setParameters(tempParameters);
+                double predictedRMSE = aligner.getRMSE();
+                if (predictedRMSE < lastRMSE) {
+                    predicted = true;
+                    predictedCount++;
+                    predictedRMSEGain += lastRMSE - predictedRMSE;
+                } else {
+                    aligner.setParameters(lastParameters);
+                }
+            }
+            // the other objects iterate concurrently with this one
+            for (TrackedObject o : trackedObjects) {
+                o.start(trackingPool, arrivalTime);
+            }
+            boolean converged = false;
+            long iteratingTime = 0;
+            Arrays.fill(iterationsPerLevel, 0);
+            Arrays.fill(iteratingTimePerLevel, 0);
+            scheduler.startFrame(arrivalTime);
+            while (!converged) {
+                int p = aligner.getPyramidLevel();
+                int q = scheduler.nextLevel(p, minLevel, iterationTime,
+                        iterationCount, iterationsPerLevel, System.nanoTime());
+                if (q < 0) {
+                    // no time left before the next frame
+                    break;
+                } else if (q != p) {
+                    aligner.setPyramidLevel(q);
+                    p = q;
+                }
+//                int l = aligner.getLastLinePosition();
+
+                long iterationStartTime = System.nanoTime();
+                converged = aligner.iterate(delta);
+                long iterationEndTime = System.nanoTime();
+
+//                iterationTime[p][l] += iterationEndTime - iterationStartTime;
+//                iterationCount[p][l]++;
+                long time = iterationEndTime - iterationStartTime;
+                iteratingTime += time;
+                iterationsPerLevel[p]++;
+                iteratingTimePerLevel[p] += time;
+
+                iterationTime [p] += time;
+                iterationTime2[p] += time*time;
+
+                if (timeMax > 0 && iteratingTime > timeMax) {
+                    converged = true;
+                }
+            }
+            long iteratingEndTime = System.nanoTime();
+            int iterations = 0;
+            for (int i = 0; i < iterationsPerLevel.length; i++) {
+                iterations         += iterationsPerLevel[i];
+                iterationCount [i] += iterationsPerLevel[i];
+                iterationCount2[i] += iterationsPerLevel[i]*iterationsPerLevel[i];
+                if (iterationsPerLevel[i] > 0) {
+                    latency.iterate[i].record(iteratingTimePerLevel[i]);
+                }
+            }
+            // the telemetry records every frame, so the log only needs a line now and then
+            double RMSE = aligner.getRMSE();
+            boolean logFrame = logFrames && (lastFrameLogTime == 0 || startTime - lastFrameLogTime >= frameLogInterval);
+            frameLog.setLength(0);
+            if (logFrame) {
+                lastFrameLogTime = startTime;
+                frameLog.append(iteratingTime/1000000).append("  ").append(iterations)
+                        .append("  ").append((float)RMSE);
+                if (trackingSettings.useOpenCL) {
+                    frameLog.append("  upload ").append(uploadedTiles).append('/')
+                            .append(uploadedTiles + skippedTiles).append(" tiles ")
+                            .append(uploadedBytes/1024).append(" KB");
+                }
+            }
+            totalIteratingTime2  += iteratingTime*iteratingTime;
+            totalIterationCount2 += iterations*iterations;
+
+            parameters = (ProCamTransformer.Parameters)aligner.getParameters();
+//System.out.println(parameters);
+
+            long auditTime = System.nanoTime();
+            // reset to previous values outlying gain and ambient light values
+            boolean resetGainAmbientLight = false;
+            int from = parameters.size() - transformer.getNumGains() - transformer.getNumBiases();
+            int to   = parameters.size();
+            for (int i = from; i < to; i++) {
+                double p = parameters.get(i);
+                if (p < 0 || p > 2) {
+                    resetGainAmbientLight = true;
+                    break;
+                }
+            }
+            if (resetGainAmbientLight) {
+                for (int i = from; i < to; i++) {
+                    parameters.set(i, lastParameters.get(i));
+                }
+                aligner.setParameters(parameters);
+            }
+//System.out.println(parameters);
+
+            // if it looks like we had a better estimate before, switch back
+            if (auditor != null) {
+                // the current, previous, and predicted parameters, without touching the aligner
+                int n = 0;
+                hypotheses[n++] = parameters;
+                hypotheses[n++] = lastParameters;
+                if (predicted && n < hypotheses.length) {
+                    // still holds the prediction
+                    hypotheses[n++] = tempParameters;
+                }
+                int best = auditor.audit(hypotheses, n);
+                if (best > 0) {
+                    aligner.setParameters(hypotheses[best]);
+                }
+            } else if (trackingSettings.pyramidLevelAudit >= 0) {
+                int p = trackingSettings.pyramidLevelAudit;
+                if (aligner.getPyramidLevel() != p) {
+                    aligner.setPyramidLevel(p);
+                }
+                double auditRMSE = aligner.getRMSE();
+                tempParameters.set(parameters);
+                aligner.setParameters(lastParameters);
+                double lastRMSE = aligner.getRMSE();
+                if (auditRMSE < lastRMSE) {
+                    aligner.setParameters(tempParameters);
+                }
+            }
+
+//System.out.println(aligner.getOutlierCount() + " " + aligner.getPixelCount() +
+//        " " + (float)aligner.getOutlierCount()/aligner.getPixelCount());
+            int outlierCount = aligner.getOutlierCount(), pixelCount = aligner.getPixelCount();
+            boolean outlying = trackingSettings.outlierRatioMax > 0 &&
+                    outlierCount >= trackingSettings.outlierRatioMax * pixelCount;
+            if (outlying) {
+                if (++lostCount > 1) {
+                    // lost track of object, try to find it again from where it was
+                    if (framesCount > RELOCALIZED_FRAMES_MIN) {
+                        relocalizations = 0;
+                    }
+                    relocalizing = relocalizations++ < trackingSettings.relocalizationAttempts;
+                    joinTrackedObjects();
+                    break;
+                }
+            } else {
+                lostCount = 0;
+                goodParameters.set(aligner.getParameters());
+            }
+            parameters = (ProCamTransformer.Parameters)aligner.getParameters();
+
+            long handMouseTime = System.nanoTime();
+            // if needed, let the HandMouse compute new coordinates
+            IplImage[] images = null;
+            if (realityAugmentor.needsMouse()) {
+                int p = trackingSettings.pyramidLevelHandMouse;
+                if (aligner.getPyramidLevel() != p) {
+                    aligner.setPyramidLevel(p);
+                }
+                if (images == null) {
+                    images = aligner.getImages();
+                }
+                CvRect roi = aligner.getRoi();
+                double[] roiPts = aligner.getTransformedRoiPts();
+
+//                //int w = cameraDevice.imageWidth, h = cameraDevice.imageHeight;
+//                //CvRect roi = cvRect(0, 0, w, h);
+//                //double[] roiPts = { 0.0, 0.0,  w, 0.0,  w, h,  0.0, h };
+//                double vx = roiPts[2] - roiPts[0];
+//                double vy = roiPts[3] - roiPts[1];
+//                CvPoint points = new CvPoint((byte)(16 - p),
+//                        roiPts[0] +   vx/3, roiPts[1] +   vy/3,
+//                        roiPts[0] + 2*vx/3, roiPts[1] + 2*vy/3,
+//                        (roiPts[0]+roiPts[2]+roiPts[4]+roiPts[6])/4,
+//                        (roiPts[1]+roiPts[3]+roiPts[5]+roiPts[7])/4);
+//                cvFillConvexPoly(images[3], points, 3, cvScalarAll(0.2), 8, 16);
+//                //cvSet(images[4], CvScalar.WHITE);
+
+                handMouse.update(images, p, roi, roiPts);
+            }
+
+            long updateTime = System.nanoTime();
+            latency.audit.record(handMouseTime - auditTime);
+            latency.handMouse.record(updateTime - handMouseTime);
+            // if we have monitor frames, hand over the images to display for feedback
+            if (monitorRenderer != null) {
+                int p = aligner.getPyramidLevel();
+                double scale = trackingSettings.getMonitorWindowsScale()*(1<<p);
+                if (images == null) {
+                    images = aligner.getImages();
+                }
+                monitorRenderer.offer(p, scale, images, grabbedImage, handMouse,
+                        transformer, parameters, realityAugmentor);
+                String roiLogString = monitorRenderer.getRoiLogString();
+                if (logFrame && roiLogString != null) {
+                    frameLog.append(roiLogString);
+                }
+            }
+            if (recordingStage != null) {
+                // every tracked frame, unlike the monitor windows, so the video plays at the camera rate
+                int p = aligner.getPyramidLevel();
+                if (images == null) {
+                    images = aligner.getImages();
+                }
+                IplImage recordedImage = getMonitorImage(images[1], null, p);
+                realityAugmentor.drawRoi(recordedImage, p, null, transformer, parameters);
+                recordingStage.record(recordedImage);
+            }
+            if (logFrame) {
+                logger.info(frameLog.toString());
+            }
+            long monitorTime = System.nanoTime() - updateTime;
+            latency.monitorDisplay.record(monitorTime);
+
+            // the stages below modify the images the other objects align
+            joinTrackedObjects();
+
+            // update the projector and camera images
+            long overheadTime = System.nanoTime() - iteratingEndTime;
+            RealityAugmentor.VirtualSettings virtualSettings = realityAugmentor.getVirtualSettings();
+            boolean stagesRunning = false;
+            if (virtualSettings != null && virtualSettings.projectionType ==
+                    RealityAugmentor.ProjectionType.FIXED) {
+                cameraStage.process(projectorBufferRing.get(1));
+            } else if (trackingSettings.useOpenCL) {
+                cameraStage.process(projectorBufferRing.get(1));
+                projectorStage.process(projectorBufferRing.get(-1));
+            } else {
+                // the camera and projector stages run concurrently on their own threads,
+                // and the camera stage also with the updates below, which do not use its buffer
+                cameraStage.submit(projectorBufferRing.get(1));
+                projectorStage.submit(projectorBufferRing.get(-1));
+                stagesRunning = true;
+            }
+
+            if (predictor != null) {
+                predictor.update(parameters, predictedEnd);
+            }
+            if (stagesRunning) {
+                // the projector stage waits for the last updates of the augmentors,
+                // which may read their parameters until then
+                projectorStage.await();
+            }
+            lastParameters.set(parameters);
+            ProjectorBuffer pb = projectorBufferRing.get();
+            realityAugmentor.update(pb.image, pb.roi, handMouse.getX(),
+                    handMouse.getY(), handMouse.isClick(), lastParameters);
+            for (TrackedObject o : trackedObjects) {
+                if (!o.lost) {
+                    o.updateAugmentor();
+                }
+            }
+            if (stagesRunning) {
+                // the aligners need the new frame, and the stage the current ring position
+                cameraStage.await();
+            }
+
+            // the next camera frame will hopefully correspond to projectorBufferRing.get()
+            // if not, we should play with projectorBufferingSize and proCamPhaseShift
+            projectorBufferRing.position(projectorBufferRing.position()+1);
+
+            long endTime = System.nanoTime();
+            latency.frame.record(endTime - startTime);
+            frameCount++;
+            scheduler.endFrame(overheadTime);
+            for (TrackedObject o : trackedObjects) {
+                o.endFrame(overheadTime);
+            }
+            auditTime = handMouseTime - auditTime;
+            handMouseTime = updateTime - handMouseTime;
+            updateTime = endTime - updateTime;
+            endTime = endTime - startTime;
+            totalAuditTime  += auditTime;
+            totalAuditTime2 += auditTime*auditTime;
+            totalHandMouseTime  += handMouseTime;
+            totalHandMouseTime2 += handMouseTime*handMouseTime;
+            totalUpdateTime  += updateTime;
+            totalUpdateTime2 += updateTime*updateTime;
+            totalTime  += endTime;
+            totalTime2 += endTime*endTime;
+
+            if (telemetry != null) {
+                stageTimes[0] = lastGrabTime;
+                stageTimes[1] = lastUndistortTime;
+                stageTimes[2] = iteratingTime;
+                stageTimes[3] = auditTime;
+                stageTimes[4] = handMouseTime;
+                stageTimes[5] = monitorTime;
+                stageTimes[6] = realityAugmentor.getUpdateTime();
+                stageTimes[7] = endTime;
+                telemetry.record(startTime, frameGrabber.getFrameNumber(),
+                        (predicted ? TelemetryRecorder.PREDICTED : 0) | (outlying ? TelemetryRecorder.OUTLYING : 0),
+                        RMSE, outlierCount, pixelCount, iterationsPerLevel, stageTimes, parameters);
+            }
+            if (sessionRecorder != null) {
+                sessionRecorder.setParameters(sessionRecord, parameters);
+            }
+
+            if (allocatedBytes >= 0) {
+                long bytes = TrackingLatency.getAllocatedBytes();
+                if (framesCount > WARMUP_FRAMES && bytes > allocatedBytes) {
+                    totalAllocatedBytes += bytes - allocatedBytes;
+                    allocatingFrames++;
+                    heapAllocatedBytes += bytes - allocatedBytes;
+                    heapAllocatingFrames++;
+                    int max = trackingSettings.heapAllocationMax;
+                    if (max >= 0 && bytes - allocatedBytes > max) {
+                        throw new IllegalStateException("Frame " + framesCount + " allocated " +
+                                (bytes - allocatedBytes) + " bytes on the heap after warmup, more than " + max + ".");
+                    }
+                }
+                allocatedBytes = bytes;
+            }
+            frameTracked(trackedFrameNumber, iterations, RMSE, endTime);
+        }
+
+        stopMonitorRenderer();
+
+        double totalIteratingTime  = 0;
+        int    totalIterationCount = 0;
+//        infoLogString = "\nStatistics\n" +
+//                          "==========\n" +
+//                          "[pyramidLevel, lineSearchIndex] averageTime averageIterations\n";
+//        for (int i = 0; i < iterationTime.length; i++) {
+//            for (int j = 0; j < iterationTime[i].length; j++) {
+//                infoLogString += "[" + i + ", " + j + "] " + (iterationCount[i][j] == 0 ? 0 :
+//                    (float)iterationTime[i][j]/iterationCount[i][j] + " " +
+//                    (float)iterationCount[i][j]/framesCount) + "\n";
+//                totalIterations += iterationCount[i][j];
+//            }
+//        }
+//        infoLogString += "totalAverageIterations = " + (float)totalIterations/framesCount;
+        infoLogString = "\nalignmentStatistics\n" +
+                          "===================\n" +
+                          "pyramidLevel  averageTime (ms)  averageIterations\n" +
+                          "-------------------------------------------------\n";
+        for (int i = 0; i < iterationTime.length; i++) {
+            double meanTime   = iterationTime[i]/iterationCount[i];
+            double sqmeanTime = iterationTime2[i]/iterationCount[i];
+            double meanIter   = (double)iterationCount[i]/framesCount;
+            double sqmeanIter = (double)iterationCount2[i]/framesCount;
+
+            infoLogString += i + "    " + (iterationCount[i] == 0 ? "0±0" :
+                (float)meanTime/1000000 + "±" + (float)Math.sqrt(sqmeanTime - meanTime*meanTime)/1000000) + "    " +
+                (float)meanIter         + "±" + (float)Math.sqrt(sqmeanIter - meanIter*meanIter)  + "\n";
+            totalIteratingTime  += iterationTime [i];
+            totalIterationCount += iterationCount[i];
+        }
+        double meanTime   = totalIteratingTime  /framesCount;
+        double sqmeanTime = totalIteratingTime2 /framesCount;
+        double meanIter   = (double)totalIterationCount /framesCount;
+        double sqmeanIter = (double)totalIterationCount2/framesCount;
+
+        infoLogString += "all  " +
+                (float)meanTime/1000000 + "±" + (float)Math.sqrt(sqmeanTime - meanTime*meanTime)/1000000 + "    " +
+                (float)meanIter         + "±" + (float)Math.sqrt(sqmeanIter - meanIter*meanIter) + "\n";
+        logger.info(infoLogString);
+
+        totalAuditTime  /= framesCount;
+        totalAuditTime2 /= framesCount;
+        totalHandMouseTime  /= framesCount;
+        totalHandMouseTime2 /= framesCount;
+        totalUpdateTime  /= framesCount;
+        totalUpdateTime2 /= framesCount;
+        totalTime  /= framesCount;
+        totalTime2 /= framesCount;
+        logger.info("auditTime = " + (float)totalAuditTime/1000000 + "±" + (float)
+                Math.sqrt(totalAuditTime2 - totalAuditTime*totalAuditTime)/1000000 + " ms");
+        logger.info("handMouseTime = " + (float)totalHandMouseTime/1000000 + "±" + (float)
+                Math.sqrt(totalHandMouseTime2 - totalHandMouseTime*totalHandMouseTime)/1000000 + " ms");
+        logger.info("updateTime = " + (float)totalUpdateTime/1000000 + "±" + (float)
+                Math.sqrt(totalUpdateTime2 - totalUpdateTime*totalUpdateTime)/1000000 + " ms");
+        logger.info("totalTime = " + (float)totalTime/1000000 + "±" + (float)
+                Math.sqrt(totalTime2 - totalTime*totalTime)/1000000 + " ms");
+        logger.info("frameLatency p50/p99/max = " + latency.frame + " ms");
+        if (trackingSettings.useOpenCL) {
+            long totalUploadBytes = totalUploadedBytes + totalSkippedBytes;
+            logger.info("projectorUploads = " + (framesCount == 0 ? 0 : totalUploadedBytes/framesCount) + " bytes per frame on average, " +
+                    (float)(totalUploadBytes == 0 ? 0 : 100.0*totalSkippedBytes/totalUploadBytes) + "% skipped as unchanged");
+        }
+        logger.info("deadlineStops = " + scheduler.getDeadlineStops() +
+                "  levelSkips = " + scheduler.getLevelSkips());
+        if (predictor != null) {
+            // the frames where the prediction gets rejected are the harder ones, so to measure
+            // the iterations saved, compare averageIterations above with a run without prediction
+            logger.info("motionPrediction used in " + predictedCount + " of " + framesCount +
+                    " frames, initial RMSE lowered by " + (float)(predictedCount == 0 ? 0 :
+                    predictedRMSEGain/predictedCount) + " on average");
+        }
+        if (allocatedBytes >= 0) {
+            logger.info("heapAllocations in " + allocatingFrames + " of " + Math.max(0, framesCount - WARMUP_FRAMES) +
+                    " frames after warmup, " + (allocatingFrames == 0 ? 0 : totalAllocatedBytes/allocatingFrames) +
+                    " bytes on average" + (logFrames || haveMonitorWindows() ? " (including logging and monitoring)" : ""));
+        }
+
+        if (aligner instanceof GNImageAlignerCL) {
+            ((GNImageAlignerCL)aligner).release();
+        }
+        // consume the pending delayed frame, if any
+        grabImage(true, -1);
+        return isCancelled() || grabbedImage == null;
+    }
+
+    /** Runs the tracking loop until cancelled, releasing all resources before returning. */
+    public synchronized void run() {
+        try {
+            setProgress(INITIALIZING);
+            latency = new TrackingLatency(alignerSettings.getPyramidLevelMax() + 1);
+            latency.register(name);
+
+            projectorGLFrame = null;
+            if (projectorSink instanceof CanvasFrameSink) {
+                CanvasFrame frame = ((CanvasFrameSink)projectorSink).getCanvasFrame();
+                if (frame instanceof GLCanvasFrame) {
+                    projectorGLFrame = (GLCanvasFrame)frame;
+                }
+            }
+
+            // perform initialization of camera device
+            // access FrameGrabber objects from _this_ thread *ONLY*...
+            frameGrabber = createFrameGrabber();
+            frameGrabber.setImageMode(ImageMode.COLOR);
+            if (trackingSettings.useOpenCL) {
+                frameGrabber.setPixelFormat(AV_PIX_FMT_RGBA);
+            }
+            frameGrabber.start();
+            grabberConverter = new OpenCVFrameConverter.ToIplImage();
+            IplImage image = grabberConverter.convert(frameGrabber.grab());
+            if (trackingSettings.sessionFile != null && !(frameGrabber instanceof SessionGrabber)) {
+                sessionRecorder = new SessionRecorder(trackingSettings.sessionFile, image,
+                        frameGrabber.getFrameRate(), frameGrabber.getGamma(), frameGrabber.getSensorPattern());
+                sessionRecorder.record(image, System.nanoTime(), frameGrabber.getFrameNumber(), -1);
+            }
+            final IplImage initImage = image;
+            final int initWidth    = initImage.width();
+            final int initHeight   = initImage.height();
+            final int initChannels = trackingSettings.useOpenCL ? 4 : initImage.nChannels();
+            final int initDepth    = initImage.depth();
+
+            if (initWidth != cameraDevice.imageWidth || initHeight != cameraDevice.imageHeight) {
+                cameraDevice.rescale(initWidth, initHeight);
+            }
+
+            // the buffering size must be known before allocating the buffer ring
+            if (trackingSettings.calibrateLatency) {
+                calibrateLatency();
+            }
+
+            // resize and tile the monitor frames according to the size of the grabbed images
+            if (monitorWindows != null) {
+                monitorConverters = new OpenCVFrameConverter.ToIplImage[monitorWindows.length];
+                for (int i = 0; i < monitorWindows.length; i++) {
+                    monitorConverters[i] = new OpenCVFrameConverter.ToIplImage();
+                }
+                monitorImages = new IplImage[alignerSettings.getPyramidLevelMax() + 1];
+                final double initScale = trackingSettings.getMonitorWindowsScale();
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < monitorWindows.length; i++) {
+                            monitorWindows[i].setCanvasSize(
+                                    (int)Math.round(initWidth *initScale),
+                                    (int)Math.round(initHeight*initScale));
+                            monitorWindows[i].setTitle(monitorWindowsTitles[i] + " (" +
+                                    initWidth + " x " + initHeight + "  " +
+                                    (initDepth&~IPL_DEPTH_SIGN) + " bpp  gamma = " +
+                                    frameGrabber.getGamma() + ") - ProCamTracker");
+                        }
+                    }
+                });
+                CanvasFrame.tile(monitorWindows);
+                CanvasFrame.global = monitorWindows[0];
+            }
+
+            // allocate memory for all images and load video
+            final int minLevel = alignerSettings.getPyramidLevelMin();
+            undistortedCameraImage  = IplImage.create(initWidth >> minLevel,
+                    initHeight >> minLevel, initDepth, initChannels);
+            cameraTargetImage = undistortedCameraImage;
+            distortedProjectorImage = IplImage.create(projectorDevice.imageWidth,
+                    projectorDevice.imageHeight, IPL_DEPTH_8U, initChannels);
+            BufferRing.BufferFactory<ProjectorBuffer> projectorBufferFactory;
+            projectorBufferFactory = new BufferRing.BufferFactory<ProjectorBuffer>() {
+                public ProjectorBuffer create() {
+                    return new ProjectorBuffer(distortedProjectorImage, false);
+                }
+            };
+            if (trackingSettings.useOpenCL) {
+                GLContext shareWith = null;
+                if (projectorGLFrame != null) {
+                    shareWith = projectorGLFrame.getGLCanvas().getContext();
+                }
+                contextCL = new JavaCVCL(shareWith);
+
+                grabbedImageCL            = //contextCL.createCLImageFrom(initImage);
+                        contextCL.getCLContext().createImage2d(initWidth, initHeight,
+                                new CLImageFormat(frameGrabber.getSensorPattern() != -1L ?
+                                        CLImageFormat.ChannelOrder.R :
+                                        CLImageFormat.ChannelOrder.RGBA, ChannelType.UNORM_INT8));
+                undistortedCameraImageCL  = //contextCL.createCLImageFrom(undistortedCameraImage);
+                        contextCL.getCLContext().createImage2d(
+                                undistortedCameraImage.width(), undistortedCameraImage.height(),
+                                new CLImageFormat(CLImageFormat.ChannelOrder.RGBA, ChannelType.FLOAT));
+                cameraDevice.setMapsPyramidLevel(minLevel);
+                cameraMapxCL = contextCL.writeImage(cameraMapxCL, cameraDevice.getUndistortMap1(), false);
+                cameraMapyCL = contextCL.writeImage(cameraMapyCL, cameraDevice.getUndistortMap2(), false);
+
+                if (projectorGLFrame != null) {
+                    projectorMapxCL = contextCL.writeImage(projectorMapxCL, projectorDevice.getDistortMap1(), false);
+                    projectorMapyCL = contextCL.writeImage(projectorMapyCL, projectorDevice.getDistortMap2(), false);
+                    distortedProjectorImageCL = contextCL.createCLGLImageFrom(distortedProjectorImage);
+                }
+                projectorBufferFactory = new BufferRing.BufferFactory<ProjectorBuffer>() {
+                    public ProjectorBuffer create() {
+                        return new ProjectorBuffer(distortedProjectorImage, true);
+                    }
+                };
+            } else {
+                cameraDevice.setMapsPyramidLevel(minLevel);
+                cameraRemapper = new CameraRemapper(cameraDevice.getUndistortMap1(), cameraDevice.getUndistortMap2());
+                projectorRemapper = new ProjectorRemapper(projectorDevice.getDistortMap1(),
+                        projectorDevice.getDistortMap2(), 32);
+                if (initDepth == IPL_DEPTH_8U) {
+                    undistortedCameraFloatImage = IplImage.create(undistortedCameraImage.width(),
+                            undistortedCameraImage.height(), IPL_DEPTH_32F, initChannels);
+                }
+            }
+            projectorBufferRing = new BufferRing<ProjectorBuffer>(projectorBufferFactory,
+                    trackingSettings.projectorBufferingSize);
+
+            realityAugmentor = new RealityAugmentor(realityAugmentorSettings,
+                    objectFinderSettings, markerDetectorSettings, virtualBallSettings,
+                    cameraDevice, projectorDevice, initChannels);
+            realityAugmentor.setSharedAssets(sharedAssets);
+            realityAugmentor.setPairName(name);
+
+            handMouse = new HandMouse(handMouseSettings);
+
+            // get the three projector frames for initialization
+            GNImageAligner.Settings s = alignerSettings.clone();
+            // prepare settings for maximum accuracy
+            s.setAlphaTikhonov(0);
+            s.setDeltaMin(0);
+            s.setLineSearch(new double[] { 1.0, 1.0/2, 1.0/4, 1.0/8, 1.0/16, 1.0/32, 1.0/64, 1.0/128 });
+            s.setThresholdsOutlier(new double[] { 0.0 });
+            s.setThresholdsZero(new double[] { 0.0 });
+            reflectanceInitializer = new ReflectanceInitializer(cameraDevice, projectorDevice, initChannels, s);
+            projectorInitFloatImages = reflectanceInitializer.getProjectorImages();
+            projectorInitImages   = new IplImage[projectorInitFloatImages.length];
+            cameraInitImages      = new IplImage[projectorInitFloatImages.length];
+            cameraInitFloatImages = new IplImage[projectorInitFloatImages.length];
+            for (int i = 0; i < projectorInitFloatImages.length; i++) {
+                projectorInitImages[i]   = IplImage.createCompatible(distortedProjectorImage);
+                cameraInitImages[i]      = IplImage.create(initWidth, initHeight, initDepth, initChannels);
+                cameraInitFloatImages[i] = IplImage.create(undistortedCameraImage.width(),
+                        undistortedCameraImage.height(), IPL_DEPTH_32F, initChannels);
+                cvConvertScale(projectorInitFloatImages[i], projectorInitImages[i], 255, 0);
+                projectorDevice.distort(projectorInitImages[i], distortedProjectorImage);
+                cvCopy(distortedProjectorImage, projectorInitImages[i]);
+            }
+            reflectanceImage = IplImage.createCompatible(cameraInitFloatImages[0]);
+            if (trackingSettings.useOpenCL) {
+                reflectanceImageCL = contextCL.createCLImageFrom(reflectanceImage);
+            }
+            if (trackingSettings.trackMultipleObjects || trackingSettings.parallelAudit) {
+                if (trackingSettings.useOpenCL) {
+                    logger.warning("Tracking multiple objects and parallel audits are not supported with OpenCL.");
+                } else {
+                    trackingPool = sharedPool != null ? sharedPool :
+                            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                }
+            }
+            // the cache holds only one object
+            if (trackingSettings.initializationCacheFile != null &&
+                    (trackingPool == null || !trackingSettings.trackMultipleObjects)) {
+                // any change to the devices, objects, or images makes a new key
+                ArrayList<Object> keys = new ArrayList<Object>(Arrays.asList(cameraSettings, projectorSettings,
+                        alignerSettings, realityAugmentorSettings, initWidth, initHeight, initChannels));
+                for (Object o : new Object[] { cameraSettings, projectorSettings }) {
+                    if (o instanceof ProjectiveDevice.CalibratedSettings) {
+                        keys.add(((ProjectiveDevice.CalibratedSettings)o).getParametersFile());
+                    }
+                }
+                for (RealityAugmentor.ObjectSettings os : realityAugmentorSettings.toArray()) {
+                    keys.add(os.getTextureImageFile());
+                }
+                initializationCache = new InitializationCache(trackingSettings.initializationCacheFile,
+                        InitializationCache.createKey(keys.toArray()));
+            }
+
+            if (trackingSettings.outputVideoFile != null) {
+                frameRecorder = new FFmpegFrameRecorder(trackingSettings.outputVideoFile,
+                        undistortedCameraImage.width(), undistortedCameraImage.height());
+                frameRecorder.start();
+                recordingStage = new RecordingStage(name == null ? "recorder" : name + " recorder",
+                        frameRecorder, undistortedCameraImage, trackingSettings.outputVideoQueueSize,
+                        trackingSettings.outputVideoPolicy, 1/2.2);
+                recordingStage.start();
+                if (monitorImages == null) {
+                    // the tracking loop records the target image with the ROI drawn on it
+                    monitorImages = new IplImage[alignerSettings.getPyramidLevelMax() + 1];
+                }
+            } else {
+                frameRecorder = null;
+                recordingStage = null;
+            }
+
+            if (!trackingSettings.useOpenCL) {
+                // OpenCL calls stay on this thread
+                cameraStage.start(name);
+                projectorStage.start(name);
+            }
+
+            boolean done = false;
+            while (!done) {
+                done = doTracking();
+
+                // force release of native memory
+                System.gc();
+                Pointer.deallocateReferences();
+            }
+        } catch (Throwable t) {
+            if (!isCancelled()) {
+                while (t.getCause() != null) { t = t.getCause(); }
+                logger.log(Level.SEVERE, "Could not perform tracking.", t);
+                cancel();
+            }
+        }
+
+        try {
+            cameraStage.stop();
+            projectorStage.stop();
+            if (realityAugmentor != null) {
+                realityAugmentor.release();
+            }
+            releaseTrackedObjects();
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted while stopping pipeline stages.", ex);
+        }
+
+        if (trackingPool != null && trackingPool != sharedPool) {
+            trackingPool.shutdown();
+        }
+        trackingPool = null;
+        if (latency != null) {
+            latency.unregister();
+            latency = null;
+        }
+        if (telemetry != null) {
+            telemetry.close();
+            telemetry = null;
+        }
+        try {
+            if (sessionRecorder != null) {
+                logger.info("session saved " + sessionRecorder.getCount() + " frames to " + sessionRecorder.getFile());
+                sessionRecorder.close();
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Could not close session file.", ex);
+        } finally {
+            sessionRecorder = null;
+            grabbedRecord = -1;
+            grabbedFrameNumber = -1;
+        }
+
+        try {
+            if (frameGrabber != null) {
+                frameGrabber.stop();
+                frameGrabber.release();
+            }
+        } catch (Exception ex) {
+            logger.log(Level.SEVERE, "Could not release FrameGrabber.", ex);
+        } finally {
+            frameGrabber = null;
+            grabberConverter = null;
+        }
+
+        try {
+            stopMonitorRenderer();
+            if (recordingStage != null) {
+                recordingStage.stop();
+                logger.info("outputVideo encoded " + recordingStage.getEncodedCount() + " frames in " +
+                        (float)recordingStage.getEncodingMillis() + " ms, dropped " + recordingStage.getDroppedCount() +
+                        ", blocked " + recordingStage.getBlockedCount() + " times, maxQueueDepth = " +
+                        recordingStage.getQueueMaxDepth());
+            }
+            if (frameRecorder != null) {
+                frameRecorder.stop();
+                frameRecorder.release();
+            }
+        } catch (Exception ex) {
+            logger.log(Level.SEVERE, "Could not release FrameRecorder.", ex);
+        } finally {
+            frameRecorder = null;
+            recordingStage = null;
+        }
+
+        if (trackingSettings.useOpenCL) {
+            grabbedImageCL.release();
+            undistortedCameraImageCL.release();
+            if (distortedProjectorImageCL != null) {
+                contextCL.releaseCLGLImage(distortedProjectorImageCL);
+                projectorMapxCL.release();
+                projectorMapyCL.release();
+            }
+            reflectanceImageCL.release();
+            cameraMapxCL.release();
+            cameraMapyCL.release();
+            grabbedImageCL = undistortedCameraImageCL = distortedProjectorImageCL = null;
+            reflectanceImageCL = null;
+            cameraMapxCL = cameraMapyCL = projectorMapxCL = projectorMapyCL = null;
+
+            contextCL.release();
+            contextCL = null;
+        }
+        if (cameraRemapper != null) {
+            cameraRemapper.release();
+            cameraRemapper = null;
+        }
+        if (projectorRemapper != null) {
+            projectorRemapper.release();
+            projectorRemapper = null;
+        }
+
+        roiPts = null;
+        auditor = null;
+        transformer = null;
+        parameters = lastParameters = tempParameters = null;
+        aligner = null;
+        reflectanceInitializer = null;
+        handMouse = null;
+        realityAugmentor = null;
+
+        grabbedImage = undistortedCameraImage = undistortedCameraFloatImage = distortedProjectorImage = null;
+        cameraTargetImage = null;
+        projectorInitFloatImages = projectorInitImages = null;
+        cameraInitImages = cameraInitFloatImages = monitorImages = null;
+        reflectanceImage = null;
+
+        if (projectorBufferRing != null) {
+            projectorBufferRing.release();
+            projectorBufferRing = null;
+        }
+
+        // force release of native memory
+        System.gc();
+        Pointer.deallocateReferences();
+    }
+
+    // synchronized with run()...
+    public synchronized void dispose() {
+        if (monitorWindows != null) {
+            for (int i = 0; i < monitorWindows.length; i++) {
+                if (monitorWindows[i] != null) {
+                    monitorWindows[i].dispose();
+                    monitorWindows[i] = null;
+                }
+            }
+        }
+        if (projectorSink != null) {
+            projectorSink.dispose();
+            projectorSink = null;
+            projectorGLFrame = null;
+        }
+
+        // force release of native memory
+        System.gc();
+        Pointer.deallocateReferences();
+    }
+
+    /** Loads all the settings from a file saved by {@link MainFrame}. */
+    public void loadSettings(File settingsFile) throws IOException {
+        XMLDecoder decoder = new XMLDecoder(new BufferedInputStream(new FileInputStream(settingsFile)));
+        cameraSettings = (CameraDevice.Settings)decoder.readObject();
+        projectorSettings = (ProjectorDevice.Settings)decoder.readObject();
+        objectFinderSettings = (ObjectFinder.Settings)decoder.readObject();
+        markerDetectorSettings = (MarkerDetector.Settings)decoder.readObject();
+        alignerSettings = (GNImageAligner.Settings)decoder.readObject();
+        handMouseSettings = (HandMouse.Settings)decoder.readObject();
+        virtualBallSettings = (VirtualBall.Settings)decoder.readObject();
+        realityAugmentorSettings = (RealityAugmentor.Settings)decoder.readObject();
+        trackingSettings = (TrackingWorker.Settings)decoder.readObject();
+        decoder.close();
+    }
+
+    /**
+     * Runs the tracking engine without GUI, using settings saved from {@link MainFrame}.
+     * Pass "--projector" to display projector images, which requires a display, or
+     * "--simulate" to use a {@link ProCamSimulator} instead of the devices, optionally
+     * with "--texture image" as reflectance of the simulated plane, and "--fps rate" and
+     * "--gamma gamma" to override the frame rate and response gamma of the camera settings.
+     */
+    public static void main(String[] args) throws Exception {
+        File settingsFile = null, textureImageFile = null;
+        boolean showProjector = false, simulate = false;
+        double frameRate = 0, gamma = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--projector".equals(args[i])) {
+                showProjector = true;
+            } else if ("--simulate".equals(args[i])) {
+                simulate = true;
+            } else if ("--texture".equals(args[i]) && i+1 < args.length) {
+                textureImageFile = new File(args[++i]);
+            } else if ("--fps".equals(args[i]) && i+1 < args.length) {
+                frameRate = Double.parseDouble(args[++i]);
+            } else if ("--gamma".equals(args[i]) && i+1 < args.length) {
+                gamma = Double.parseDouble(args[++i]);
+            } else {
+                settingsFile = new File(args[i]);
+            }
+        }
+        if (settingsFile == null) {
+            System.err.println("Usage: java -cp procamtracker.jar " + TrackingEngine.class.getName() +
+                    " [--projector] [--simulate [--texture image] [--fps rate] [--gamma gamma]] settings.pct");
+            System.exit(1);
+        }
+        if (!showProjector && System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        // try to init all frame grabbers here, same as MainFrame
+        FrameGrabber.init();
+
+        final ProCamSimulator[] simulator = { null };
+        final TrackingEngine engine = new TrackingEngine() {
+            @Override protected FrameGrabber createFrameGrabber() throws Exception {
+                return simulator[0] != null ? simulator[0] : super.createFrameGrabber();
+            }
+        };
+        engine.loadSettings(settingsFile);
+
+        if (simulate) {
+            if (engine.trackingSettings.useOpenCL) {
+                logger.warning("The simulator does not support OpenCL, disabling it.");
+                engine.trackingSettings.setUseOpenCL(false);
+            }
+            if (textureImageFile == null) {
+                // use the texture of the first object, if any
+                for (RealityAugmentor.ObjectSettings os : engine.realityAugmentorSettings.toArray()) {
+                    textureImageFile = os.getTextureImageFile();
+                    break;
+                }
+            }
+        }
+        engine.init();
+        if (simulate) {
+            if (frameRate <= 0) {
+                frameRate = engine.cameraSettings.getFrameRate() > 0 ? engine.cameraSettings.getFrameRate() : 60;
+            }
+            if (gamma <= 0) {
+                gamma = engine.cameraSettings.getResponseGamma() > 0 ? engine.cameraSettings.getResponseGamma() : 2.2;
+            }
+            simulator[0] = new ProCamSimulator(engine.cameraSettings, engine.projectorSettings,
+                    textureImageFile, ProCamSimulator.getDisplayLatency(engine.trackingSettings.getProjectorBufferingSize()),
+                    frameRate, gamma);
+            engine.projectorSink = simulator[0];
+        } else if (showProjector) {
+            engine.projectorSink = new CanvasFrameSink(engine.projectorDevice.createCanvasFrame(),
+                    engine.projectorDevice.getSettings().getResponseGamma());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override public void run() {
+                engine.cancel();
+                // wait for run() to release everything
+                synchronized (engine) { }
+            }
+        });
+        engine.run();
+        engine.dispose();
+        System.exit(0);
+    }
+}
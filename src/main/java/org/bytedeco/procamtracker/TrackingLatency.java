@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The latency histograms of each stage of {@link TrackingEngine}, published as
+ * MBeans named "org.bytedeco.procamtracker:type=TrackingLatency,stage=..." while
+ * tracking runs, for example to watch p50/p99/max in JConsole. With several
+ * engines in the same JVM, each one adds its own ",pair=..." to the names.
+ *
+ * @author Samuel Audet
+ */
+public class TrackingLatency {
+    public TrackingLatency(int pyramidLevels) {
+        iterate = new LatencyHistogram[pyramidLevels];
+        for (int i = 0; i < iterate.length; i++) {
+            iterate[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Waiting for the camera frame. */
+    final LatencyHistogram grab = new LatencyHistogram();
+    /** Linearization and distortion removal of the camera frame. */
+    final LatencyHistogram undistort = new LatencyHistogram();
+    /** Iterations of the aligner per frame, for each pyramid level. */
+    final LatencyHistogram[] iterate;
+    final LatencyHistogram audit = new LatencyHistogram();
+    final LatencyHistogram handMouse = new LatencyHistogram();
+    final LatencyHistogram monitorDisplay = new LatencyHistogram();
+    /** Rendering of the next projector image by the RealityAugmentor. */
+    final LatencyHistogram augmentUpdate = new LatencyHistogram();
+    /** Distortion and display of the projector image. */
+    final LatencyHistogram projectorShow = new LatencyHistogram();
+    /** The whole tracking loop, from one frame to the next. */
+    final LatencyHistogram frame = new LatencyHistogram();
+
+    private List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+    private String pair = null;
+
+    private static final Logger logger = Logger.getLogger(TrackingLatency.class.getName());
+
+    public LatencyHistogram getGrab() { return grab; }
+    public LatencyHistogram getUndistort() { return undistort; }
+    public LatencyHistogram getIterate(int pyramidLevel) { return iterate[pyramidLevel]; }
+    public LatencyHistogram getAudit() { return audit; }
+    public LatencyHistogram getHandMouse() { return handMouse; }
+    public LatencyHistogram getMonitorDisplay() { return monitorDisplay; }
+    public LatencyHistogram getAugmentUpdate() { return augmentUpdate; }
+    public LatencyHistogram getProjectorShow() { return projectorShow; }
+    public LatencyHistogram getFrame() { return frame; }
+
+    /**
+     * Returns the number of bytes allocated on the heap so far by the calling thread,
+     * or -1 if the JVM cannot tell, to check that the tracking loop does not allocate.
+     */
+    public static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean)bean;
+            if (b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled()) {
+                return b.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public void register() {
+        register(null);
+    }
+    public synchronized void register(String pair) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        this.pair = pair;
+        register(server, "grab", grab);
+        register(server, "undistort", undistort);
+        for (int i = 0; i < iterate.length; i++) {
+            register(server, "iterate" + i, iterate[i]);
+        }
+        register(server, "audit", audit);
+        register(server, "handMouse", handMouse);
+        register(server, "monitorDisplay", monitorDisplay);
+        register(server, "augmentUpdate", augmentUpdate);
+        register(server, "projectorShow", projectorShow);
+        register(server, "frame", frame);
+    }
+
+    private void register(MBeanServer server, String stage, LatencyHistogram histogram) {
+        try {
+            ObjectName name = new ObjectName("org.bytedeco.procamtracker:type=TrackingLatency,stage=" + stage
+                    + (pair != null ? ",pair=" + ObjectName.quote(pair) : ""));
+            server.registerMBean(histogram, name);
+            registeredNames.add(name);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not register latency MBean for stage " + stage + ".", e);
+        }
+    }
+
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Could not unregister latency MBean " + name + ".", e);
+            }
+        }
+        registeredNames.clear();
+    }
+}
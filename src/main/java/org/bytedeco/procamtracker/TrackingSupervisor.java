@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Runs several projector-camera pairs in the same JVM, each with its own
+ * {@link TrackingEngine} on its own thread, but sharing a thread pool sized to
+ * the cores left over by the tracking loops, as well as the images loaded from
+ * files via {@link SharedAssets}. It logs the throughput of each pair periodically.
+ * From the command line:
+ * <pre>
+ * java -cp ... org.bytedeco.procamtracker.TrackingSupervisor [--projector] [--report seconds] pair1.pct pair2.pct ...
+ * </pre>
+ *
+ * @author Samuel Audet
+ */
+public class TrackingSupervisor {
+
+    public TrackingSupervisor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    public TrackingSupervisor(int processors) {
+        this.processors = processors;
+    }
+
+    /** A projector-camera pair and its throughput at the last report. */
+    public static class Pair {
+        Pair(String name, TrackingEngine engine) {
+            this.name = name;
+            this.engine = engine;
+        }
+
+        final String name;
+        final TrackingEngine engine;
+        Thread thread;
+        long lastFrameCount = 0, lastTime = 0;
+        volatile double framesPerSecond = 0;
+
+        public String getName() {
+            return name;
+        }
+        public TrackingEngine getEngine() {
+            return engine;
+        }
+        public double getFramesPerSecond() {
+            return framesPerSecond;
+        }
+    }
+
+    private final int processors;
+    private final List<Pair> pairs = new ArrayList<Pair>();
+    private final SharedAssets sharedAssets = new SharedAssets();
+    private ForkJoinPool pool = null;
+    private ScheduledExecutorService reporter = null;
+    private boolean showProjectors = false;
+
+    private static final Logger logger = Logger.getLogger(TrackingSupervisor.class.getName());
+
+    public SharedAssets getSharedAssets() {
+        return sharedAssets;
+    }
+    public boolean isShowProjectors() {
+        return showProjectors;
+    }
+    /** Displays the images of each projector full screen, otherwise the engines run without displaying them. */
+    public void setShowProjectors(boolean showProjectors) {
+        this.showProjectors = showProjectors;
+    }
+
+    public synchronized List<Pair> getPairs() {
+        return new ArrayList<Pair>(pairs);
+    }
+
+    /** Adds an engine, with its settings loaded, to start with the others. */
+    public synchronized Pair addPair(String name, TrackingEngine engine) {
+        if (pool != null) {
+            throw new IllegalStateException("Cannot add pairs once started.");
+        }
+        engine.name = name;
+        engine.sharedAssets = sharedAssets;
+        Pair pair = new Pair(name, engine);
+        pairs.add(pair);
+        return pair;
+    }
+
+    /** Starts all the engines, and reports their throughput every reportInterval seconds, if positive. */
+    public synchronized void start(int reportInterval) throws Exception {
+        // each tracking loop keeps a core busy, so leave those out of the pool
+        pool = new ForkJoinPool(Math.max(1, processors - pairs.size()));
+        try {
+            for (final Pair p : pairs) {
+                p.engine.sharedPool = pool;
+                p.engine.init();
+                if (showProjectors && p.engine.projectorSink == null) {
+                    p.engine.projectorSink = new TrackingEngine.CanvasFrameSink(
+                            p.engine.projectorDevice.createCanvasFrame(),
+                            p.engine.projectorDevice.getSettings().getResponseGamma());
+                }
+                p.thread = new Thread("ProCamTracker " + p.name) {
+                    @Override public void run() {
+                        p.engine.run();
+                    }
+                };
+                p.lastTime = System.nanoTime();
+                p.thread.start();
+            }
+        } catch (Exception e) {
+            // do not leave the engines already started, nor the pool, running
+            try {
+                stop();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        }
+        if (reportInterval > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ProCamTracker supervisor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            reporter.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    report();
+                }
+            }, reportInterval, reportInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /** Updates the throughput of each pair since the last report, and logs it. */
+    public synchronized void report() {
+        StringBuilder sb = new StringBuilder("throughput");
+        for (Pair p : pairs) {
+            long time = System.nanoTime(), count = p.engine.getFrameCount();
+            if (time > p.lastTime) {
+                p.framesPerSecond = (count - p.lastFrameCount) * 1e9 / (time - p.lastTime);
+            }
+            p.lastFrameCount = count;
+            p.lastTime = time;
+            TrackingLatency latency = p.engine.getLatency();
+            sb.append("  ").append(p.name).append(": ").append((float)p.framesPerSecond).append(" fps");
+            if (latency != null) {
+                sb.append(" (frame p50/p99/max = ").append(latency.getFrame()).append(" ms)");
+            }
+        }
+        logger.info(sb.toString());
+    }
+
+    /** Returns once all engines have stopped, for example after cancelling them. */
+    public void join() throws InterruptedException {
+        for (Pair p : getPairs()) {
+            if (p.thread != null) {
+                p.thread.join();
+            }
+        }
+    }
+
+    public void cancel() {
+        for (Pair p : getPairs()) {
+            p.engine.cancel();
+        }
+    }
+
+    /** Cancels and waits for all engines, and releases everything they shared. */
+    public void stop() throws InterruptedException {
+        cancel();
+        join();
+        synchronized (this) {
+            if (reporter != null) {
+                reporter.shutdownNow();
+                reporter = null;
+            }
+            for (Pair p : pairs) {
+                p.engine.dispose();
+                p.thread = null;
+            }
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+            sharedAssets.release();
+        }
+    }
+
+    /**
+     * Runs headless one engine per settings file saved from {@link MainFrame},
+     * named after the file. Pass "--projector" to display projector images, and
+     * "--report seconds" to change how often the throughput gets logged.
+     */
+    public static void main(String[] args) throws Exception {
+        List<File> settingsFiles = new ArrayList<File>();
+        boolean showProjector = false;
+        int reportInterval = 10;
+        for (int i = 0; i < args.length; i++) {
+            if ("--projector".equals(args[i])) {
+                showProjector = true;
+            } else if ("--report".equals(args[i]) && i+1 < args.length) {
+                reportInterval = Integer.parseInt(args[++i]);
+            } else {
+                settingsFiles.add(new File(args[i]));
+            }
+        }
+        if (settingsFiles.isEmpty()) {
+            System.err.println("Usage: java -cp procamtracker.jar " + TrackingSupervisor.class.getName() +
+                    " [--projector] [--report seconds] settings1.pct [settings2.pct ...]");
+            System.exit(1);
+        }
+        if (!showProjector && System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        // try to init all frame grabbers here, same as MainFrame
+        FrameGrabber.init();
+
+        final TrackingSupervisor supervisor = new TrackingSupervisor();
+        for (File f : settingsFiles) {
+            TrackingEngine engine = new TrackingEngine();
+            engine.loadSettings(f);
+            supervisor.addPair(f.getName(), engine);
+        }
+        supervisor.setShowProjectors(showProjector);
+        supervisor.start(reportInterval);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override public void run() {
+                try {
+                    supervisor.stop();
+                } catch (InterruptedException ex) {
+                    logger.log(Level.WARNING, "Interrupted while stopping the supervisor.", ex);
+                }
+            }
+        });
+        supervisor.join();
+        System.exit(0);
+    }
+}
@@ -23,7 +23,6 @@ import java.awt.Color;
 import java.awt.Point;
 import org.bytedeco.javacv.BaseChildSettings;
 import org.bytedeco.javacv.CanvasFrame;
-import org.bytedeco.javacv.JavaCV;
 import org.bytedeco.javacv.OpenCVFrameConverter;
 
 import org.bytedeco.opencv.opencv_core.*;
@@ -158,9 +157,15 @@ public class VirtualBall {
     private double[] roiPts, insidePosition, position, velocity;
     private double timeLeft;
     private CvPoint center = new CvPoint();
+    // reused on every frame, to keep the garbage collector out of the way
+    private double[] l = new double[2], n = new double[2], p = new double[2], boost = new double[2];
 
     public static double[] intersectLines(double x1, double y1,
             double x2, double y2, double x3, double y3, double x4, double y4) {
+        return intersectLines(x1, y1, x2, y2, x3, y3, x4, y4, new double[2]);
+    }
+    public static double[] intersectLines(double x1, double y1,
+            double x2, double y2, double x3, double y3, double x4, double y4, double[] p) {
         double d  = ((y4 - y3)*(x2 - x1) - (x4 - x3)*(y2 - y1));
         double ua = ((x4 - x3)*(y1 - y3) - (y4 - y3)*(x1 - x3)) / d;
         ua = ua < 0 ? 0 : ua > 1 ? 1 : ua;
@@ -170,7 +175,9 @@ public class VirtualBall {
 //        double ub = ((x2 - x1)*(y1 - y3) - (y2 - y1)*(x1 - x3)) / d;
 //        ub = ub < 0 ? 0 : ub > 1 ? 1 : ub;
 //        System.out.println(ua + " " + ub);
-        return new double[] { x1 + ua*(x2- x1),  y1 + ua*(y2- y1) };
+        p[0] = x1 + ua*(x2- x1);
+        p[1] = y1 + ua*(y2- y1);
+        return p;
     }
 
     public static double closestPointOnLine(double x1, double y1,
@@ -189,6 +196,10 @@ public class VirtualBall {
 
     public static double[] boostFromMovingLine(double x1, double y1, double x2, double y2,
             double x1p, double y1p, double x2p, double y2p, double x3, double y3) {
+        return boostFromMovingLine(x1, y1, x2, y2, x1p, y1p, x2p, y2p, x3, y3, new double[2]);
+    }
+    public static double[] boostFromMovingLine(double x1, double y1, double x2, double y2,
+            double x1p, double y1p, double x2p, double y2p, double x3, double y3, double[] boost) {
         double u  = closestPointOnLine(x1,  y1,  x2,  y2,  x3, y3);
         double up = closestPointOnLine(x1p, y1p, x2p, y2p, x3, y3);
         double cx1  = x1  + u *(x2  - x1);
@@ -201,13 +212,22 @@ public class VirtualBall {
             boosty = cy1p - cy1;
             //double boost = Math.sqrt(boostx*boostx + boosty*boosty);
         }
-        return new double[] { boostx, boosty };
+        boost[0] = boostx;
+        boost[1] = boosty;
+        return boost;
+    }
+
+    static double[] unitize(double x, double y, double[] v) {
+        double norm = Math.sqrt(x*x + y*y);
+        v[0] = x/norm;
+        v[1] = y/norm;
+        return v;
     }
 
 
     private boolean rollOffMovingLine(double x1, double y1, double x2, double y2,
             double x1p, double y1p, double x2p, double y2p) {
-        double[] n = JavaCV.unitize(y1p-y2p, x2p-x1p);
+        unitize(y1p-y2p, x2p-x1p, n);
         if ((insidePosition[0]-x1)*n[0] + (insidePosition[1]-y1)*n[1] < 0) {
             n[0] = -n[0]; n[1] = -n[1];
         }
@@ -224,7 +244,7 @@ public class VirtualBall {
         double distp = distanceToLine(x1, y1, x2, y2, x3p, y3p);
         if (dist < settings.radius+1.0 && dist > settings.radius-1.0 &&
                 distp < settings.radius+1.0 && distp > settings.radius-1.0) {
-            double[] l = JavaCV.unitize(x2p-x1p, y2p-y1p);
+            unitize(x2p-x1p, y2p-y1p, l);
 
             double v = l[0]*(velocity[0] + settings.gravity[0]) +
                        l[1]*(velocity[1] + settings.gravity[1]);
@@ -236,8 +256,8 @@ public class VirtualBall {
             velocity[0] = l[0]*v;
             velocity[1] = l[1]*v;
 
-            double[] boost = boostFromMovingLine(x1, y1, x2, y2,
-                    x1p, y1p, x2p, y2p, x3, y3);
+            boostFromMovingLine(x1, y1, x2, y2,
+                    x1p, y1p, x2p, y2p, x3, y3, boost);
             double b = Math.sqrt(boost[0]*boost[0] + boost[1]*boost[1]);
             if (b > settings.stickiness) {
                 velocity[0] += boost[0]*(1 + settings.radius/b);
@@ -273,13 +293,13 @@ public class VirtualBall {
         if (Math.signum((x2p-x1p)*(y3p-y1p)-(y2p-y1p)*(x3p-x1p)) !=
                 Math.signum((x2-x1)*(y3-y1)-(y2-y1)*(x3-x1)) ||
                 distanceToLine(x1p, y1p, x2p, y2p, x3p, y3p) < settings.radius*0.999) {
-            double[] l = JavaCV.unitize(x2p-x1p, y2p-y1p);
-            double[] n = JavaCV.unitize(y1p-y2p, x2p-x1p);
+            unitize(x2p-x1p, y2p-y1p, l);
+            unitize(y1p-y2p, x2p-x1p, n);
             if ((insidePosition[0]-x1)*n[0] + (insidePosition[1]-y1)*n[1] < 0) {
                 n[0] = -n[0]; n[1] = -n[1];
             }
-            double[] p = intersectLines(x1p + settings.radius*(n[0] + l[0]), y1p + settings.radius*(n[1] + l[1]),
-                    x2p + settings.radius*(n[0] - l[0]), y2p + settings.radius*(n[1] - l[1]), x3, y3, x3p, y3p);
+            intersectLines(x1p + settings.radius*(n[0] + l[0]), y1p + settings.radius*(n[1] + l[1]),
+                    x2p + settings.radius*(n[0] - l[0]), y2p + settings.radius*(n[1] - l[1]), x3, y3, x3p, y3p, p);
             double dx = p[0]-position[0];
             double dy = p[1]-position[1];
             position[0] = p[0];
@@ -305,8 +325,8 @@ public class VirtualBall {
                 }
             }
 
-            double[] boost = boostFromMovingLine(x1, y1, x2, y2,
-                    x1p, y1p, x2p, y2p, x3, y3);
+            boostFromMovingLine(x1, y1, x2, y2,
+                    x1p, y1p, x2p, y2p, x3, y3, boost);
             double b = Math.sqrt(boost[0]*boost[0] + boost[1]*boost[1]);
             if (b > settings.stickiness) {
                 velocity[0] += boost[0]*(1 + settings.radius/b);
@@ -376,7 +396,7 @@ public class VirtualBall {
                 image.nChannels() == 4 ? settings.colorRGB : settings.colorBGR,
                 CV_FILLED, CV_AA, 16);
 
-        this.roiPts = roiPts.clone();
+        System.arraycopy(roiPts, 0, this.roiPts, 0, roiPts.length);
     }
 
     public static void main(String[] args) throws Exception {
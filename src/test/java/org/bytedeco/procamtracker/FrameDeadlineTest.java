@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.logging.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tracks the plane of {@link ProCamSimulator} delivering frames at the frame rate of
+ * the camera, with the useFrameDeadline setting, and checks that the time spent
+ * waiting for the camera does not eat into the time left to iterate on later frames.
+ *
+ * @author Samuel Audet
+ */
+public class FrameDeadlineTest {
+
+    static final int FRAMES = 100;
+    // slow enough to leave time for a few iterations on any machine
+    static final double FRAME_RATE = 15;
+
+    private static final Logger logger = Logger.getLogger(FrameDeadlineTest.class.getName());
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void iterateUntilDeadlineWhenPacedByCamera() throws Exception {
+        SimulatedEngine engine = new SimulatedEngine(folder.getRoot(), FRAMES);
+        engine.cameraSettings.setFrameRate(FRAME_RATE);
+        engine.trackingSettings.setUseFrameDeadline(true);
+        engine.setPaced(true);
+        engine.start();
+        assertNull("Tracking failed: " + engine.getFailure(), engine.getFailure());
+        int n = engine.getTrackedFrames();
+        assertEquals(FRAMES, n);
+
+        // the first half lets the scheduler learn the costs, the second half must still iterate
+        int frames = 0, idleFrames = 0, iterations = 0;
+        for (int i = n/2; i < n; i++) {
+            frames++;
+            iterations += engine.getIterations(i);
+            if (engine.getIterations(i) == 0) {
+                idleFrames++;
+            }
+        }
+        logger.info("frameDeadline of " + frames + " frames at " + FRAME_RATE + " fps: averageIterations = " +
+                (float)iterations/frames + ", idleFrames = " + idleFrames);
+        assertTrue(idleFrames + " of the last " + frames + " frames did not iterate", idleFrames < frames/4);
+    }
+}
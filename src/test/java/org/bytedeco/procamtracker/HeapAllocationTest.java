@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.logging.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Tracks the plane of {@link ProCamSimulator} with the heapAllocationMax setting,
+ * which stops tracking at the first frame that allocates more than that on the heap
+ * after warmup. It cannot be zero: only the tracking thread gets measured, including
+ * the calls into JavaCV, where for example GNImageAligner.iterate() allocates a few
+ * small objects in Parallel.loop() every time. The bound catches anything larger,
+ * such as images or buffers allocated on every frame. The camera, projector, and
+ * augmentor stages run on other threads, so their allocations do not count.
+ *
+ * @author Samuel Audet
+ */
+public class HeapAllocationTest {
+
+    // including the warmup frames of the engine
+    static final int FRAMES = 100;
+    // far below the size of any image, but enough for what JavaCV allocates on many cores
+    static final int BYTES_PER_FRAME_MAX = 256*1024;
+
+    private static final Logger logger = Logger.getLogger(HeapAllocationTest.class.getName());
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void smallHeapAllocationsAfterWarmup() throws Exception {
+        assumeTrue("Allocations cannot be measured on this JVM", TrackingLatency.getAllocatedBytes() >= 0);
+
+        SimulatedEngine engine = new SimulatedEngine(folder.getRoot(), FRAMES);
+        engine.trackingSettings.setHeapAllocationMax(BYTES_PER_FRAME_MAX);
+        engine.start();
+        assertNull("Tracking failed: " + engine.getFailure(), engine.getFailure());
+        assertEquals(FRAMES, engine.getTrackedFrames());
+        long frames = engine.getHeapAllocatingFrames();
+        logger.info("heapAllocations in " + frames + " frames after warmup, " +
+                (frames == 0 ? 0 : engine.getHeapAllocatedBytes()/frames) + " bytes on average");
+    }
+}
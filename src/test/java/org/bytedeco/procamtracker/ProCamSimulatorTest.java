@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.util.logging.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tracks the plane of {@link ProCamSimulator} with {@link SimulatedEngine}, and
+ * measures the iterations, the error against the ground truth, and the time per frame.
+ * Since the region of interest stays fixed on the plane, its corners mapped back
+ * onto the texture should not move: the error is the distance in camera pixels
+ * between the tracked corners and their average position on the texture.
+ *
+ * @author Samuel Audet
+ */
+public class ProCamSimulatorTest {
+
+    static final int FRAMES = 200;
+    // in pixels, loose enough for the noise of the simulator
+    static final double ERROR_MAX = 2.0;
+
+    private static final Logger logger = Logger.getLogger(ProCamSimulatorTest.class.getName());
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void trackAgainstGroundTruth() throws Exception {
+        SimulatedEngine engine = new SimulatedEngine(folder.getRoot(), FRAMES);
+        engine.start();
+        assertNull("Tracking failed: " + engine.getFailure(), engine.getFailure());
+        int n = engine.getTrackedFrames();
+        assertEquals(FRAMES, n);
+
+        ProCamSimulator simulator = engine.getSimulator();
+        double[][] H = new double[n][], invH = new double[n][];
+        double[] texturePts = new double[8];
+        for (int i = 0; i < n; i++) {
+            H[i] = simulator.getGroundTruthH(engine.getFrameNumber(i));
+            invH[i] = invert(H[i]);
+            double[] pts = transform(invH[i], engine.getRoiPts(i));
+            for (int j = 0; j < 8; j++) {
+                texturePts[j] += pts[j]/n;
+            }
+        }
+
+        double totalIterations = 0, totalError = 0, maxError = 0, totalRMSE = 0, totalTime = 0;
+        for (int i = 0; i < n; i++) {
+            double[] truePts = transform(H[i], texturePts), roiPts = engine.getRoiPts(i);
+            double error = 0;
+            for (int j = 0; j < 8; j += 2) {
+                double dx = roiPts[j] - truePts[j], dy = roiPts[j + 1] - truePts[j + 1];
+                error += Math.sqrt(dx*dx + dy*dy)/4;
+            }
+            totalIterations += engine.getIterations(i);
+            totalError += error;
+            maxError = Math.max(maxError, error);
+            totalRMSE += engine.getRMSE(i);
+            totalTime += engine.getFrameTime(i)/1000000.0;
+        }
+        double meanError = totalError/n;
+        logger.info("simulatedTracking of " + n + " frames: averageIterations = " + (float)(totalIterations/n) +
+                ", averageError = " + (float)meanError + " px (max " + (float)maxError + " px)" +
+                ", averageRMSE = " + (float)(totalRMSE/n) + ", averageTime = " + (float)(totalTime/n) + " ms");
+        assertTrue("Average error of " + meanError + " px", meanError < ERROR_MAX);
+    }
+
+    static double[] transform(double[] H, double[] pts) {
+        double[] dst = new double[pts.length];
+        for (int i = 0; i < pts.length; i += 2) {
+            double x = pts[i], y = pts[i + 1];
+            double w = H[6]*x + H[7]*y + H[8];
+            dst[i    ] = (H[0]*x + H[1]*y + H[2])/w;
+            dst[i + 1] = (H[3]*x + H[4]*y + H[5])/w;
+        }
+        return dst;
+    }
+
+    static double[] invert(double[] H) {
+        double a = H[0], b = H[1], c = H[2], d = H[3], e = H[4], f = H[5], g = H[6], h = H[7], k = H[8];
+        double A = e*k - f*h, B = f*g - d*k, C = d*h - e*g;
+        double det = a*A + b*B + c*C;
+        return new double[] { A/det, (c*h - b*k)/det, (b*f - c*e)/det,
+                              B/det, (a*k - c*g)/det, (c*d - a*f)/det,
+                              C/det, (b*g - a*h)/det, (a*e - b*d)/det };
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2026 Samuel Audet
+ *
+ * This file is part of ProCamTracker.
+ *
+ * ProCamTracker is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ProCamTracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ProCamTracker.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bytedeco.procamtracker;
+
+import java.io.File;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.bytedeco.javacv.CameraDevice;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.GNImageAligner;
+import org.bytedeco.javacv.HandMouse;
+import org.bytedeco.javacv.MarkerDetector;
+import org.bytedeco.javacv.ObjectFinder;
+import org.bytedeco.javacv.ProjectiveDevice;
+import org.bytedeco.javacv.ProjectorDevice;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+/**
+ * Runs a {@link TrackingEngine} without GUI on a {@link ProCamSimulator}, with a
+ * synthetic calibration and default settings, until it has tracked a given number
+ * of frames, recording what it tracked for each of them. Recording happens into
+ * preallocated arrays, so it does not add to the heap allocations of the engine.
+ *
+ * @author Samuel Audet
+ */
+class SimulatedEngine extends TrackingEngine {
+
+    static final int CAMERA_WIDTH = 640, CAMERA_HEIGHT = 480;
+    static final int PROJECTOR_WIDTH = 1024, PROJECTOR_HEIGHT = 768;
+    static final double FRAME_RATE = 60, GAMMA = 2.2;
+
+    /**
+     * Writes the calibration to the given directory, and creates the settings, but
+     * neither the engine nor the simulator, see {@link #start()}.
+     */
+    SimulatedEngine(File directory, int frames) throws Exception {
+        File calibrationFile = new File(directory, "calibration.yaml");
+        writeCalibration(calibrationFile);
+
+        CameraDevice.CalibratedSettings cs = new CameraDevice.CalibratedSettings();
+        cs.setName("Camera 0");
+        cs.setParametersFile(calibrationFile);
+        cs.setFrameRate(FRAME_RATE);
+        cs.setResponseGamma(GAMMA);
+        ProjectorDevice.CalibratedSettings ps = new ProjectorDevice.CalibratedSettings();
+        ps.setName("Projector 0");
+        ps.setParametersFile(calibrationFile);
+        cameraSettings = cs;
+        projectorSettings = ps;
+        objectFinderSettings = new ObjectFinder.Settings();
+        markerDetectorSettings = new MarkerDetector.Settings();
+        alignerSettings = new GNImageAligner.Settings();
+        handMouseSettings = new HandMouse.Settings();
+        virtualBallSettings = new VirtualBall.Settings();
+
+        // the simulator shows a checkerboard on the plane, so no need for a texture image
+        RealityAugmentor.ObjectSettings os = new RealityAugmentor.ObjectSettings();
+        os.setRoiAcquisitionMethod(RealityAugmentor.RoiAcquisitionMethod.HALF_FRAME);
+        os.setSurfaceHasTexture(true);
+        os.add(new RealityAugmentor.VirtualSettings());
+        realityAugmentorSettings = new RealityAugmentor.Settings();
+        realityAugmentorSettings.add(os);
+
+        trackingSettings = new TrackingWorker.Settings();
+        trackingSettings.setUseOpenCL(false);
+        // log only the first frame, since logging allocates
+        trackingSettings.setFrameLogInterval(Integer.MAX_VALUE);
+
+        this.frameNumbers = new long[frames];
+        this.iterations = new int[frames];
+        this.RMSEs = new double[frames];
+        this.frameTimes = new long[frames];
+        this.roiPts = new double[frames][8];
+    }
+
+    private ProCamSimulator simulator = null;
+    private boolean paced = false;
+    private final long[] frameNumbers;
+    private final int[] iterations;
+    private final double[] RMSEs;
+    private final long[] frameTimes;
+    private final double[][] roiPts;
+    private int trackedFrames = 0;
+    private volatile Throwable failure = null;
+
+    /** Writes a 640x480 camera and a 1024x768 projector, 100 units to its left. */
+    static void writeCalibration(File file) {
+        CameraDevice camera = new CameraDevice("Camera 0");
+        setIntrinsics(camera, CAMERA_WIDTH, CAMERA_HEIGHT, 600);
+        camera.R = CvMat.create(3, 3);
+        camera.R.put(1, 0, 0,  0, 1, 0,  0, 0, 1);
+        camera.T = CvMat.create(3, 1);
+        camera.T.put(0, 0, 0);
+
+        ProjectorDevice projector = new ProjectorDevice("Projector 0");
+        setIntrinsics(projector, PROJECTOR_WIDTH, PROJECTOR_HEIGHT, 800);
+        projector.R = CvMat.create(3, 3);
+        projector.R.put(1, 0, 0,  0, 1, 0,  0, 0, 1);
+        projector.T = CvMat.create(3, 1);
+        projector.T.put(-100, 0, 0);
+        projector.additiveLight = CvMat.create(3, 1);
+        projector.additiveLight.put(0, 0, 0);
+
+        ProjectiveDevice.write(file.getAbsolutePath(), camera, projector);
+    }
+
+    private static void setIntrinsics(ProjectiveDevice device, int width, int height, double f) {
+        device.imageWidth = width;
+        device.imageHeight = height;
+        device.cameraMatrix = CvMat.create(3, 3);
+        device.cameraMatrix.put(f, 0, width/2.0,  0, f, height/2.0,  0, 0, 1);
+        device.distortionCoeffs = CvMat.create(1, 4);
+        device.distortionCoeffs.put(0, 0, 0, 0);
+        device.colorMixingMatrix = CvMat.create(3, 3);
+        device.colorMixingMatrix.put(1, 0, 0,  0, 1, 0,  0, 0, 1);
+    }
+
+    /**
+     * Initializes the engine and the simulator, and runs until the engine has tracked
+     * all the frames, or failed. Then releases everything, except for the simulator.
+     */
+    void start() throws Exception {
+        Logger logger = Logger.getLogger(TrackingEngine.class.getName());
+        Handler handler = new Handler() {
+            @Override public void publish(LogRecord record) {
+                if (failure == null && record.getLevel().intValue() >= Level.SEVERE.intValue()) {
+                    failure = record.getThrown() != null ? record.getThrown()
+                            : new Exception(record.getMessage());
+                }
+            }
+            @Override public void flush() { }
+            @Override public void close() { }
+        };
+        logger.addHandler(handler);
+        try {
+            init();
+            simulator = new ProCamSimulator(cameraSettings, projectorSettings, null,
+                    ProCamSimulator.getDisplayLatency(trackingSettings.getProjectorBufferingSize()),
+                    cameraSettings.getFrameRate(), cameraSettings.getResponseGamma());
+            simulator.setPaced(paced);
+            projectorSink = simulator;
+            run();
+        } finally {
+            dispose();
+            logger.removeHandler(handler);
+        }
+    }
+
+    @Override protected FrameGrabber createFrameGrabber() throws Exception {
+        return simulator;
+    }
+
+    @Override protected void frameTracked(long frameNumber, int iterations, double RMSE, long frameTime) {
+        int i = trackedFrames;
+        if (i >= frameNumbers.length) {
+            return;
+        }
+        frameNumbers[i] = frameNumber;
+        this.iterations[i] = iterations;
+        RMSEs[i] = RMSE;
+        frameTimes[i] = frameTime;
+        double[] pts = getTrackedRoiPts();
+        System.arraycopy(pts, 0, roiPts[i], 0, Math.min(pts.length, 8));
+        trackedFrames = i + 1;
+        if (trackedFrames >= frameNumbers.length) {
+            cancel();
+        }
+    }
+
+    /** When set, the simulator delivers frames at the frame rate of the camera settings. */
+    void setPaced(boolean paced) {
+        this.paced = paced;
+    }
+    ProCamSimulator getSimulator() {
+        return simulator;
+    }
+    /** Returns the first exception logged as severe by the engine, or null. */
+    Throwable getFailure() {
+        return failure;
+    }
+    int getTrackedFrames() {
+        return trackedFrames;
+    }
+    long getFrameNumber(int i) {
+        return frameNumbers[i];
+    }
+    int getIterations(int i) {
+        return iterations[i];
+    }
+    double getRMSE(int i) {
+        return RMSEs[i];
+    }
+    /** In nanoseconds. */
+    long getFrameTime(int i) {
+        return frameTimes[i];
+    }
+    double[] getRoiPts(int i) {
+        return roiPts[i];
+    }
+}